@@ -60,7 +60,9 @@ public class ASTNode {
     private String condition;
     private String initialization;
     private String update;
-    private final List<ASTNode> children;
+    private LoopHeader loopHeader;
+    // Both lists are created on first add, most nodes are leaves without dimensions
+    private List<ASTNode> children;
 
 
     private List<Integer> dimensions;
@@ -68,6 +70,8 @@ public class ASTNode {
     private String varType;
     private boolean isArray;
     private boolean isTwoDimensional;
+    // Only set on a root whose parse ran out of its budget
+    private boolean truncated;
     private ASTNode parent;
 
     private int complexityDegree;
@@ -80,17 +84,18 @@ public class ASTNode {
     public ASTNode(Type type, String name) {
         this.type = type;
         this.name = name;
-        this.children = new ArrayList<>();
         this.condition = null;
         this.initialization = null;
         this.update = null;
-        this.dimensions = new ArrayList<>();
         this.isArray = false;
         this.isTwoDimensional = false;
         this.complexityDegree = 0;
     }
 
     public void addChild(ASTNode child) {
+        if (children == null) {
+            children = new ArrayList<>();
+        }
         children.add(child);
     }
 
@@ -103,7 +108,7 @@ public class ASTNode {
     }
 
     public List<ASTNode> getChildren() {
-        return children;
+        return children == null ? Collections.emptyList() : children;
     }
 
     public String getFunctionName() {
@@ -130,9 +135,22 @@ public class ASTNode {
         this.parent = parent;
     }
 
+    /**
+     * Returns the innermost function declaration or definition above this
+     * node, following the parent links, or null at the top level.
+     */
+    public ASTNode getEnclosingFunction() {
+        for (ASTNode node = parent; node != null; node = node.parent) {
+            if (node.type == Type.FUNCTION_DECLARATION || node.type == Type.FUNCTION_DEFINITION) {
+                return node;
+            }
+        }
+        return null;
+    }
+
     public ASTNode getBody() {
         if (this.type == Type.FUNCTION) {
-            for (ASTNode child : children) {
+            for (ASTNode child : getChildren()) {
                 if (child.getType() == Type.BLOCK) {
                     return child; 
                 }
@@ -154,10 +172,13 @@ public class ASTNode {
     }
 
     public List<Integer> getDimensions() {
-        return dimensions;
+        return dimensions == null ? Collections.emptyList() : dimensions;
     }
 
     public void addDimension(int dimension) {
+        if (dimensions == null) {
+            dimensions = new ArrayList<>();
+        }
         dimensions.add(dimension);
     }
 
@@ -193,6 +214,18 @@ public class ASTNode {
         this.isTwoDimensional = isTwoDimensional;
     }
 
+    /**
+     * Returns true on the root of a tree whose parse ran out of its
+     * {@link ParseBudget}, so that it covers only part of the input.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
 
     public void setCondition(String condition) {
         this.condition = condition;
@@ -214,20 +247,28 @@ public class ASTNode {
         this.update = update;
     }
 
+    public LoopHeader getLoopHeader() {
+        return loopHeader;
+    }
+
+    public void setLoopHeader(LoopHeader loopHeader) {
+        this.loopHeader = loopHeader;
+    }
+
     public String getCondition() {
         return condition;
     }
 
     public int getSize() {
         int size = 1;
-        for (int dimension : dimensions) {
+        for (int dimension : getDimensions()) {
             size *= dimension;
         }
         return size;
     }
 
     public boolean size() {
-        return !dimensions.isEmpty();
+        return dimensions != null && !dimensions.isEmpty();
     }
 
     public int getComplexityDegree() {
@@ -239,13 +280,15 @@ public class ASTNode {
     }
 
     public void addChildNodes(List<ASTNode> nodes) {
-        children.addAll(nodes);
+        for (ASTNode node : nodes) {
+            addChild(node);
+        }
     }
 
     public List<ASTNode> getParameters() {
         List<ASTNode> parameters = new ArrayList<>();
         if (type == Type.FUNCTION_CALL) {
-            for (ASTNode child : children) {
+            for (ASTNode child : getChildren()) {
                 if (child.getType() == Type.EXPRESSION || child.getType() == Type.VARIABLE) {
                     parameters.add(child);
                 }
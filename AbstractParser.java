@@ -0,0 +1,781 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The recursive descent parser that {@link CParser} and {@link JavaParser}
+ * share, which builds one node per statement. The languages only differ in
+ * how a statement is recognized, such as a declaration or a label, which the
+ * subclasses decide; blocks, loops, conditionals, returns, calls and the
+ * budget, parallel and skimmed parses are handled here.
+ *
+ * Statements nested deeper than {@link #MAX_DEPTH} are parsed with an
+ * explicit stack instead of recursion, so deeply nested input cannot
+ * overflow the call stack.
+ *
+ * Malformed input is recovered from at the next ";" or "}", and no
+ * lookahead goes past the end of the statement it starts in, so a missing
+ * bracket costs one rescan of its statement rather than of the rest of the
+ * file. Each parse also has a {@link ParseBudget}; once it runs out the
+ * parser stops where it is and returns the tree built so far, marked
+ * truncated.
+ */
+public abstract class AbstractParser implements Parser {
+
+    // Nesting depth past which statements are parsed without recursion
+    private static final int MAX_DEPTH = 256;
+    // Fewest tokens worth parsing on another thread
+    private static final int MIN_PARALLEL_CHUNK = 16 * 1024;
+    // Budget checks between two reads of the clock
+    private static final int CLOCK_INTERVAL = 1024;
+
+    protected TokenSource tokens;
+    protected FlatAst ast;
+    protected int currentIndex;
+    // The function declared with each name, handed to the tree at the end of the parse
+    private Map<String, Integer> functionDefinitions = new HashMap<>();
+    // Name and body, or ";" for one without a body, of the function found by statementType
+    protected int declaredName;
+    protected int declaredBody;
+    // Scratch state of scanStatement: the statement text, the open brackets and the open calls
+    protected StringBuilder text = new StringBuilder();
+    private IntStack brackets = new IntStack();
+    private IntStack calls = new IntStack();
+    private IntStack callDepths = new IntStack();
+    // Set by parseSkimmed, so that openFunction skims the bodies it can
+    private boolean skim;
+    // The budget of every parse, and what the current one has used of it
+    private ParseBudget budget = ParseBudget.UNLIMITED;
+    private long started;
+    // Of a parser of skimmed bodies, the time spent parsing the tree so far
+    private long spent;
+    private int steps;
+    private boolean truncated;
+
+    /**
+     * Returns a new parser of the same language, for the chunks of a parallel
+     * parse and the bodies of a skimmed one.
+     */
+    protected abstract AbstractParser newParser();
+
+    /**
+     * Parses the top-level statements of a parallel parse under program,
+     * handing what is worth splitting to {@link #parseInParallel}.
+     */
+    protected abstract void parseProgramInParallel(TokenBuffer tokens, int program, ForkJoinPool pool);
+
+    /**
+     * Works out what the statement at currentIndex is. A function with a body
+     * is a FUNCTION_DECLARATION and one without, such as a prototype, a
+     * TYPE_DECLARATION; both leave their name and "{" or ";" in
+     * {@link #declaredName} and {@link #declaredBody}. A statement that is a
+     * single call is reported as FUNCTION_CALL.
+     */
+    protected abstract ASTNode.Type statementType();
+
+    // Returns true if the statement at start is a label, which parseLabel then parses
+    protected abstract boolean isLabel(int start);
+
+    protected abstract int parseLabel(int parent);
+
+    // Returns true if a "{" after the token at previous opens an initializer rather than a body
+    protected abstract boolean startsInitializer(int previous);
+
+    // Returns true if the token at index creates an instance, whose constructor arguments follow
+    protected abstract boolean createsInstance(int index);
+
+    @Override
+    public FlatAst parseFlat(TokenSource tokens) {
+        return parse(tokens, false);
+    }
+
+    private FlatAst parse(TokenSource tokens, boolean skim) {
+        reset();
+        this.tokens = tokens;
+        this.ast = new FlatAst(tokens.storage());
+        this.skim = skim;
+        this.started = System.nanoTime();
+
+        int program = ast.add(ASTNode.Type.PROGRAM, "program", FlatAst.NONE, 0);
+        parseStatements(program, Integer.MAX_VALUE, false);
+
+        ast.setEnd(program, currentIndex);
+        ast.setTruncated(truncated);
+        ast.addFunctionDefinitions(functionDefinitions);
+        ast.trim();
+        FlatAst parsed = ast;
+        reset();
+        return parsed;
+    }
+
+    @Override
+    public FlatAst parseParallel(TokenBuffer tokens, ForkJoinPool pool) {
+        reset();
+        this.tokens = tokens;
+        this.ast = new FlatAst(tokens.storage());
+        this.started = System.nanoTime();
+
+        int program = ast.add(ASTNode.Type.PROGRAM, "program", FlatAst.NONE, 0);
+        parseProgramInParallel(tokens, program, pool);
+
+        ast.setEnd(program, currentIndex);
+        ast.setTruncated(truncated);
+        ast.addFunctionDefinitions(functionDefinitions);
+        ast.trim();
+        FlatAst parsed = ast;
+        reset();
+        return parsed;
+    }
+
+    /**
+     * Parses like {@link #parseFlat}, but skims every function whose body has
+     * no loop and no call to the function itself. Such a function is left as
+     * a leaf with {@link FlatAst#setSkimmed flags} summarizing its body, and
+     * the body is only parsed once the children of the leaf are first read.
+     * Those later parses count against the budget of this one, which the
+     * time spent in each is added to, and mark the tree truncated if they run
+     * out of it. Time between them, before the tree is read, does not count.
+     */
+    @Override
+    public FlatAst parseSkimmed(TokenBuffer tokens) {
+        FlatAst skimmed = parse(tokens, true);
+
+        // A parser of its own, so that this one can go on to other files
+        AbstractParser bodies = newParser();
+        bodies.tokens = tokens;
+        bodies.budget = budget;
+        bodies.spent = System.nanoTime() - started;
+        skimmed.setBodyParser(bodies::parseBody);
+        return skimmed;
+    }
+
+    // Parses the body of a skimmed function from its "{", as openFunction would have
+    private void parseBody(FlatAst ast, int function) {
+        this.ast = ast;
+        this.currentIndex = tokens.closing(ast.tokenEnd(function) - 1);
+        // As if the parse had started the time already spent ago, and went on from there
+        started = System.nanoTime() - spent;
+        // Most bodies end before the clock would next be read, so read it now
+        truncated = truncated || budget.isExpired(started);
+        finish(function, 1);
+        spent = System.nanoTime() - started;
+        // Functions declared in the body, such as methods of a local class
+        ast.addFunctionDefinitions(functionDefinitions);
+        functionDefinitions.clear();
+        if (truncated) {
+            // Out of budget, so this body stops short like the rest of the tree would have
+            ast.setTruncated(true);
+        }
+    }
+
+    @Override
+    public void setBudget(ParseBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Drops the state of the last parse, including the tokens and the tree,
+     * so that a pooled parser does not keep them alive. Only the scratch
+     * buffers are kept, emptied, to be reused by the next parse, and the
+     * budget.
+     */
+    @Override
+    public void reset() {
+        tokens = null;
+        ast = null;
+        currentIndex = 0;
+        functionDefinitions.clear();
+        declaredName = 0;
+        declaredBody = 0;
+        skim = false;
+        steps = 0;
+        truncated = false;
+        text.setLength(0);
+        brackets.clear();
+        calls.clear();
+        callDepths.clear();
+    }
+
+    /**
+     * Parses statements as children of parent until the token at limit is
+     * reached or passed or the tokens run out. In a block it also stops at
+     * the "}" that closes it; elsewhere a "}" without a matching "{" is
+     * skipped.
+     */
+    protected void parseStatements(int parent, int limit, boolean block) {
+        while (tokens.has(currentIndex) && currentIndex < limit && withinBudget()) {
+            if (tokens.is(currentIndex, "}")) {
+                if (block) {
+                    return;
+                }
+                // A "}" without a matching "{" closes nothing
+                currentIndex++;
+                continue;
+            }
+            int open = openStatement(parent);
+            if (open != FlatAst.NONE) {
+                finish(open, 1);
+            }
+        }
+    }
+
+    /**
+     * Does what {@link #parseStatements} does without a limit, for the
+     * statements before the token at to. They are split into chunks that
+     * other parsers build on the pool, each in an arena of its own, and the
+     * chunks are attached to parent in source order.
+     *
+     * A chunk is only attached if the statements before it end exactly where
+     * it starts, as the statements after a misjudged boundary, such as the
+     * "}" of an initializer, may not start there when parsed in sequence.
+     * Such a stretch is parsed here instead, so the tree is always the one a
+     * sequential parse would build.
+     */
+    protected void parseInParallel(TokenBuffer tokens, int parent, int to, boolean block, ForkJoinPool pool) {
+        int from = currentIndex;
+        int chunkSize = Math.max(MIN_PARALLEL_CHUNK, (to - from) / (pool.getParallelism() * 4));
+        if (pool.getParallelism() < 2 || to - from < 2 * chunkSize) {
+            parseStatements(parent, Integer.MAX_VALUE, block);
+            return;
+        }
+
+        int[] boundaries = tokens.findStatementBoundaries(from, to, chunkSize);
+        List<ForkJoinTask<AbstractParser>> chunks = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            int start = boundaries[i];
+            int end = boundaries[i + 1];
+            chunks.add(pool.submit(() -> newParser().parseChunk(tokens, start, end, block, budget, started)));
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            int start = boundaries[i];
+            if (currentIndex < start && !isAtEnd(block)) {
+                parseStatements(parent, start, block);
+            }
+            if (currentIndex == start && !isAtEnd(block)) {
+                adopt(chunks.get(i).join(), parent);
+            } else {
+                chunks.get(i).cancel(false);
+            }
+        }
+        parseStatements(parent, Integer.MAX_VALUE, block);
+    }
+
+    // Parses the statements from from up to limit under a root of a new arena
+    private AbstractParser parseChunk(TokenBuffer tokens, int from, int limit, boolean block, ParseBudget budget,
+            long started) {
+        this.tokens = tokens;
+        this.budget = budget;
+        this.started = started;
+        this.ast = new FlatAst();
+        this.currentIndex = from;
+        int root = ast.add(ASTNode.Type.PROGRAM, "program", FlatAst.NONE, from);
+        parseStatements(root, limit, block);
+        return this;
+    }
+
+    // Attaches the statements a chunk parser built to parent and continues where it stopped
+    private void adopt(AbstractParser chunk, int parent) {
+        int offset = ast.addSubtrees(chunk.ast, parent);
+        chunk.functionDefinitions.forEach((name, node) -> functionDefinitions.put(name, offset + node));
+        currentIndex = chunk.currentIndex;
+        truncated |= chunk.truncated;
+    }
+
+    private boolean isAtEnd(boolean block) {
+        return truncated || !tokens.has(currentIndex) || block && tokens.is(currentIndex, "}");
+    }
+
+    /**
+     * Returns false once the parse has reached the token limit of its budget
+     * or run out of time, reading the clock every {@link #CLOCK_INTERVAL}
+     * calls. From then on every loop stops where it is, and the statements
+     * still open are closed as the parser unwinds.
+     */
+    protected boolean withinBudget() {
+        if (!truncated && (currentIndex >= budget.getMaxTokens() ||
+                ++steps % CLOCK_INTERVAL == 0 && budget.isExpired(started))) {
+            truncated = true;
+        }
+        return !truncated;
+    }
+
+    /**
+     * Parses the rest of a node returned by {@link #openStatement}: the
+     * statements of a block up to its "}", or the single body statement of
+     * any other node.
+     */
+    protected void finish(int node, int depth) {
+        if (depth > MAX_DEPTH) {
+            finishIteratively(node);
+            return;
+        }
+
+        if (ast.type(node) == ASTNode.Type.BLOCK) {
+            while (tokens.has(currentIndex) && !tokens.is(currentIndex, "}") && withinBudget()) {
+                int child = openStatement(node);
+                if (child != FlatAst.NONE) {
+                    finish(child, depth + 1);
+                }
+            }
+        } else {
+            int body = openStatement(node);
+            if (body != FlatAst.NONE) {
+                finish(body, depth + 1);
+            }
+        }
+        close(node);
+    }
+
+    /**
+     * Same as {@link #finish}, with the open nodes on an explicit stack. Only
+     * blocks stay on the stack while their statements are parsed; a header
+     * waiting for its body is closed as soon as that body is complete.
+     */
+    private void finishIteratively(int node) {
+        IntStack open = new IntStack();
+        descend(open, node);
+
+        while (!open.isEmpty()) {
+            int block = open.peek();
+            if (tokens.has(currentIndex) && !tokens.is(currentIndex, "}") && withinBudget()) {
+                descend(open, openStatement(block));
+            } else {
+                close(open.pop());
+                closeCompleted(open);
+            }
+        }
+    }
+
+    // Pushes node and, for as long as it is a header rather than a block, the body it opens
+    private void descend(IntStack open, int node) {
+        while (node != FlatAst.NONE && ast.type(node) != ASTNode.Type.BLOCK) {
+            open.push(node);
+            node = openStatement(node);
+        }
+        if (node != FlatAst.NONE) {
+            open.push(node);
+        } else {
+            closeCompleted(open);
+        }
+    }
+
+    // Closes the headers on top of the stack, whose bodies are complete
+    private void closeCompleted(IntStack open) {
+        while (!open.isEmpty() && ast.type(open.peek()) != ASTNode.Type.BLOCK) {
+            close(open.pop());
+        }
+    }
+
+    protected void close(int node) {
+        switch (ast.type(node)) {
+            case BLOCK:
+                skip("}");
+                break;
+            case DO_WHILE_LOOP:
+                if (tokens.has(currentIndex) && tokens.is(currentIndex, "while")) {
+                    currentIndex++;
+                    parseLoopHeader(node, false);
+                    skip(";");
+                }
+                break;
+            default:
+                break;
+        }
+        ast.setEnd(node, currentIndex);
+    }
+
+    /**
+     * Parses the statement at currentIndex as a child of parent, as far
+     * as it can without parsing another statement. Returns the new node if it
+     * still needs a body: a block needs its statements, and a loop,
+     * conditional, function definition or other header needs the one
+     * statement that follows it. Returns NONE if the statement is complete.
+     * A "}" is never consumed.
+     */
+    protected int openStatement(int parent) {
+        int start = currentIndex;
+        if (!tokens.has(start) || tokens.is(start, "}")) {
+            return FlatAst.NONE;
+        }
+        // Nothing before the start of a statement is looked at again
+        tokens.release(start);
+
+        if (tokens.is(start, "{")) {
+            currentIndex++;
+            return ast.add(ASTNode.Type.BLOCK, "{", parent, start);
+        }
+        if (tokens.is(start, ";")) {
+            currentIndex++;
+            return FlatAst.NONE;
+        }
+        if (isLabel(start)) {
+            return parseLabel(parent);
+        }
+        if (tokens.type(start) == Token.Type.KEYWORD) {
+            switch (tokens.value(start)) {
+                case "for":
+                    return openLoop(ASTNode.Type.FOR_LOOP, parent);
+                case "while":
+                    return openLoop(ASTNode.Type.WHILE_LOOP, parent);
+                case "do":
+                    return openLoop(ASTNode.Type.DO_WHILE_LOOP, parent);
+                case "if":
+                case "switch":
+                case "else":
+                    return openConditional(parent);
+                case "return":
+                    return parseReturn(parent);
+                default:
+                    break;
+            }
+        }
+        return openOtherStatement(parent);
+    }
+
+    private int openLoop(ASTNode.Type type, int parent) {
+        int loopNode = ast.add(type, tokens.value(currentIndex), parent, currentIndex);
+        currentIndex++;
+        if (type != ASTNode.Type.DO_WHILE_LOOP) {
+            parseLoopHeader(loopNode, type == ASTNode.Type.FOR_LOOP);
+        }
+        return loopNode;
+    }
+
+    /**
+     * Reads the parenthesized header at currentIndex into the loop
+     * attributes: initialization, condition and update separated by ";" for
+     * a for loop, only the condition otherwise. Stops early at a "{" or "}",
+     * so that a header which is never closed does not swallow the body.
+     * The token ranges of the sections are then read into a {@link LoopHeader}.
+     */
+    private void parseLoopHeader(int loopNode, boolean forLoop) {
+        if (!tokens.has(currentIndex) || !tokens.is(currentIndex, "(")) {
+            return;
+        }
+        currentIndex++;
+
+        StringBuilder[] sections = { new StringBuilder(), new StringBuilder(), new StringBuilder() };
+        int section = forLoop ? 0 : 1;
+        int sectionStart = currentIndex;
+        int end = -1;
+        int[] ranges = new int[6];
+        int depth = 0;
+
+        while (tokens.has(currentIndex) && withinBudget()) {
+            int index = currentIndex;
+            if (tokens.is(index, "{") || tokens.is(index, "}")) {
+                break;
+            }
+            boolean lastSection = !forLoop || section == 2;
+            if (depth == 0 && lastSection && tokens.is(index, ";")) {
+                break;
+            }
+            currentIndex++;
+
+            if (tokens.is(index, "(")) {
+                depth++;
+            } else if (tokens.is(index, ")")) {
+                if (depth == 0) {
+                    end = index;
+                    break; // End of the header
+                }
+                depth--;
+            } else if (depth == 0 && tokens.is(index, ";")) {
+                ranges[2 * section] = sectionStart;
+                ranges[2 * section + 1] = index;
+                section++;
+                sectionStart = index + 1;
+                continue;
+            }
+            tokens.appendTo(index, sections[section]);
+            sections[section].append(" ");
+        }
+
+        if (forLoop) {
+            ast.setInitialization(loopNode, sections[0].toString().trim());
+            ast.setUpdate(loopNode, sections[2].toString().trim());
+        }
+        ast.setCondition(loopNode, sections[1].toString().trim());
+
+        ranges[2 * section] = sectionStart;
+        ranges[2 * section + 1] = end < 0 ? currentIndex : end;
+        ast.setLoopHeader(loopNode, LoopHeader.read(tokens, ranges));
+    }
+
+    // An "else" only needs its body; "if" and "switch" first get a CONDITION child
+    private int openConditional(int parent) {
+        int conditionalNode = ast.add(ASTNode.Type.CONDITIONAL, tokens.value(currentIndex), parent,
+                currentIndex);
+        boolean hasCondition = !tokens.is(currentIndex, "else");
+        currentIndex++;
+
+        if (hasCondition && tokens.has(currentIndex) && tokens.is(currentIndex, "(")) {
+            int conditionNode = ast.add(ASTNode.Type.CONDITION, null, conditionalNode, currentIndex);
+            currentIndex++;
+            scanStatement(conditionNode, true);
+            ast.setValue(conditionNode, text.toString());
+            skip(")");
+            ast.setEnd(conditionNode, currentIndex);
+        }
+        return conditionalNode;
+    }
+
+    private int parseReturn(int parent) {
+        int returnNode = ast.add(ASTNode.Type.RETURN_STATEMENT, null, parent, currentIndex);
+        scanStatement(returnNode, false);
+        ast.setValue(returnNode, text.toString());
+        skip(";");
+        ast.setEnd(returnNode, currentIndex);
+        return FlatAst.NONE;
+    }
+
+    /**
+     * Parses a declaration, function definition or expression statement. A
+     * statement that runs into a "{" instead of a ";", such as a struct or
+     * class definition, is returned open with the block as its body.
+     */
+    private int openOtherStatement(int parent) {
+        int start = currentIndex;
+        ASTNode.Type type = statementType();
+
+        if (type == ASTNode.Type.FUNCTION_DECLARATION) {
+            return openFunction(parent, start);
+        }
+        if (type == ASTNode.Type.FUNCTION_CALL) {
+            // The statement is a single call, which becomes the statement node
+            scanStatement(parent, false);
+            skip(";");
+            return FlatAst.NONE;
+        }
+        if (type == ASTNode.Type.TYPE_DECLARATION) {
+            // A function without a body; its name is not a call
+            int declarationNode = ast.add(type, tokens.value(declaredName), parent, start);
+            currentIndex = declaredBody + 1;
+            ast.setEnd(declarationNode, currentIndex);
+            return FlatAst.NONE;
+        }
+
+        int statementNode = ast.add(type, null, parent, start);
+        scanStatement(statementNode, false);
+        ast.setValue(statementNode, text.toString());
+        if (tokens.has(currentIndex) && tokens.is(currentIndex, "{")) {
+            return statementNode;
+        }
+        skip(";");
+        ast.setEnd(statementNode, currentIndex);
+        return FlatAst.NONE;
+    }
+
+    /**
+     * Returns the ")" that closes the "(" at open, or NONE if the statement
+     * ends first. As in {@link #scanStatement}, a ";" or "}" ends it unless
+     * it is inside a "{" opened since, such as that of a lambda body.
+     */
+    protected int closingParenthesis(int open) {
+        brackets.clear();
+        for (int index = open; tokens.has(index); index++) {
+            if (brackets.peek() != '{' && (tokens.is(index, ";") || tokens.is(index, "}"))) {
+                return FlatAst.NONE;
+            }
+            if (tokens.type(index) == Token.Type.SEPARATOR) {
+                char bracket = tokens.value(index).charAt(0);
+                if (bracket == '(' || bracket == '[' || bracket == '{') {
+                    brackets.push(bracket);
+                } else if (!brackets.isEmpty() && brackets.peek() == opening(bracket)) {
+                    brackets.pop();
+                    if (brackets.isEmpty()) {
+                        return index;
+                    }
+                }
+            }
+        }
+        return FlatAst.NONE;
+    }
+
+    private int openFunction(int parent, int start) {
+        String functionName = tokens.value(declaredName);
+        int functionNode = ast.add(ASTNode.Type.FUNCTION_DECLARATION, functionName, parent, start);
+        ast.setFunctionName(functionNode, functionName);
+
+        functionDefinitions.put(functionName, functionNode);
+
+        // The return type and parameters are not kept; the body comes next
+        currentIndex = declaredBody;
+        if (skim) {
+            int flags = skimBody(functionName);
+            if (flags != FlatAst.NONE) {
+                currentIndex = tokens.closing(declaredBody) + 1;
+                ast.setSkimmed(functionNode, flags);
+                ast.setEnd(functionNode, currentIndex);
+                return FlatAst.NONE;
+            }
+        }
+        return functionNode;
+    }
+
+    /**
+     * Scans the body of the function found by statementType. Returns its
+     * {@code FlatAst.BODY_} flags if the function can be skimmed, which it
+     * can if the body has no loop and no call to the function itself.
+     * Otherwise returns NONE, as it also does for a body whose brackets do
+     * not nest or that has a ";" inside parentheses, since its statements
+     * might not end where the brackets say.
+     */
+    private int skimBody(String functionName) {
+        int end = tokens.closing(declaredBody);
+        if (!tokens.has(end)) {
+            return FlatAst.NONE;
+        }
+
+        brackets.clear();
+        int flags = 0;
+        for (int index = declaredBody; index < end; index++) {
+            switch (tokens.type(index)) {
+                case KEYWORD:
+                    if (tokens.is(index, "for") || tokens.is(index, "while") || tokens.is(index, "do")) {
+                        return FlatAst.NONE;
+                    }
+                    if (createsInstance(index)) {
+                        flags |= FlatAst.BODY_ALLOCATES;
+                    }
+                    break;
+                case IDENTIFIER:
+                    if (tokens.is(index + 1, "(")) {
+                        if (tokens.is(index, functionName)) {
+                            return FlatAst.NONE;
+                        }
+                        flags |= FlatAst.BODY_CALLS;
+                    }
+                    break;
+                case SEPARATOR:
+                    char bracket = tokens.value(index).charAt(0);
+                    if (bracket == '(' || bracket == '[' || bracket == '{') {
+                        brackets.push(bracket);
+                        if (bracket == '[') {
+                            flags |= FlatAst.BODY_ALLOCATES;
+                        }
+                    } else if (bracket == ')' || bracket == ']' || bracket == '}') {
+                        if (brackets.peek() != opening(bracket)) {
+                            return FlatAst.NONE;
+                        }
+                        brackets.pop();
+                    } else if (bracket == ';' && brackets.peek() != '{') {
+                        return FlatAst.NONE;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        // Only the "{" of the body may still be open
+        return brackets.size() == 1 ? flags : FlatAst.NONE;
+    }
+
+    /**
+     * Consumes the tokens of a statement up to the ";" that ends it, a "}"
+     * that closes the enclosing block or a "{" that opens its body, none of
+     * which is consumed. With inParentheses it instead stops at the ")"
+     * closing a condition. The text of the consumed tokens is left in
+     * {@link #text}, and each call among them is added as a child of parent,
+     * or of the call whose arguments it is in. So is each instance created,
+     * as a NEW_INSTANCE with the constructor arguments as its children.
+     *
+     * A "{" that {@link #startsInitializer starts an initializer} is part of
+     * the statement. A ";" or "}" inside an unclosed "(" or "[" still ends
+     * it, so that one missing ")" does not swallow the rest of the file.
+     */
+    private void scanStatement(int parent, boolean inParentheses) {
+        text.setLength(0);
+        brackets.clear();
+        calls.clear();
+        callDepths.clear();
+
+        int previous = FlatAst.NONE;
+        // A new instance whose constructor arguments have not been reached yet
+        int pendingNew = FlatAst.NONE;
+        while (tokens.has(currentIndex) && withinBudget()) {
+            int index = currentIndex;
+            if (brackets.peek() != '{' && (tokens.is(index, ";") || tokens.is(index, "}"))) {
+                break;
+            }
+            if (brackets.isEmpty()) {
+                if (inParentheses && tokens.is(index, ")")) {
+                    break;
+                }
+                if (tokens.is(index, "{") && !startsInitializer(previous)) {
+                    break;
+                }
+            }
+            currentIndex++;
+
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            tokens.appendTo(index, text);
+
+            int container = calls.isEmpty() ? parent : calls.peek();
+            if (tokens.type(index) == Token.Type.IDENTIFIER && tokens.has(index + 1) && tokens.is(index + 1, "(")) {
+                calls.push(pendingNew != FlatAst.NONE ? pendingNew : addCall(index, container));
+                callDepths.push(brackets.size());
+                pendingNew = FlatAst.NONE;
+            } else if (createsInstance(index)) {
+                pendingNew = ast.add(ASTNode.Type.NEW_INSTANCE, tokens.value(index), container, index);
+            } else if (tokens.type(index) != Token.Type.IDENTIFIER && !tokens.is(index, ".")) {
+                // Only a possibly qualified class name can stand between "new" and its arguments
+                pendingNew = FlatAst.NONE;
+            }
+
+            if (tokens.type(index) == Token.Type.SEPARATOR) {
+                char bracket = tokens.value(index).charAt(0);
+                if (bracket == '(' || bracket == '[' || bracket == '{') {
+                    brackets.push(bracket);
+                } else if (!brackets.isEmpty() && brackets.peek() == opening(bracket)) {
+                    brackets.pop();
+                    if (bracket == ')' && !callDepths.isEmpty() && callDepths.peek() == brackets.size()) {
+                        // The argument list of the innermost call or constructor ends here
+                        callDepths.pop();
+                        ast.setEnd(calls.pop(), index + 1);
+                    }
+                }
+            }
+            previous = index;
+        }
+
+        // Calls left open by a missing ")" end with the statement
+        while (!calls.isEmpty()) {
+            ast.setEnd(calls.pop(), currentIndex);
+        }
+    }
+
+    private static char opening(char closing) {
+        return closing == ')' ? '(' : closing == ']' ? '[' : closing == '}' ? '{' : 0;
+    }
+
+    private int addCall(int index, int parent) {
+        String functionName = tokens.value(index);
+        int currentFunction = ast.isFunction(parent) ? parent : ast.enclosingFunction(parent);
+        int callNode;
+
+        // Check if this is a recursive call
+        if (currentFunction != FlatAst.NONE && functionName.equals(ast.functionName(currentFunction))) {
+            // Recursive call
+            callNode = ast.add(ASTNode.Type.RECURSIVE_CALL, functionName, parent, index);
+        } else {
+            // Regular function call
+            callNode = ast.add(ASTNode.Type.FUNCTION_CALL, functionName, parent, index);
+        }
+        ast.setFunctionName(callNode, functionName);
+        return callNode;
+    }
+
+    protected boolean isStatementEnd(int index) {
+        return tokens.is(index, ";") || tokens.is(index, "{") || tokens.is(index, "}");
+    }
+
+    private void skip(String value) {
+        if (tokens.has(currentIndex) && tokens.is(currentIndex, value)) {
+            currentIndex++;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * The algorithms and techniques the analyzer recognizes, each with the
+ * {@link PatternRule} that recognizes it. A new pattern is a new constant
+ * here; the {@link PatternMatcher} picks up its rule, and it is found in
+ * the same pass over the tree as all the others.
+ */
+public enum AlgorithmPattern {
+
+    // mid = (low + high) / 2 with the search space narrowed past mid
+    BINARY_SEARCH("Binary search", PatternRule.in(PatternRule.Scope.LOOP, PatternRule.all(
+            PatternRule.code("mid = .. + .. / 2"),
+            PatternRule.any(
+                    PatternRule.code("high = mid -"), PatternRule.code("low = mid +"),
+                    PatternRule.code("high = mid +"), PatternRule.code("low = mid -"),
+                    PatternRule.code("right = mid -"), PatternRule.code("left = mid +"),
+                    PatternRule.code("end = mid -"), PatternRule.code("start = mid +"))))),
+
+    // n = n / 2, n /= 2
+    HALVING("Halving", PatternRule.in(PatternRule.Scope.LOOP, PatternRule.any(
+            PatternRule.code("$x = $x / 2"),
+            PatternRule.code("/= 2")))),
+
+    // A recursive function that halves: f(n / 2), f(n >> 1), or mid computed by division
+    DIVIDE_AND_CONQUER("Divide and conquer", PatternRule.in(PatternRule.Scope.FUNCTION, PatternRule.all(
+            PatternRule.recursiveCalls(1),
+            PatternRule.any(
+                    PatternRule.code("/ 2"),
+                    PatternRule.code(">> 1"),
+                    PatternRule.all(PatternRule.mentions("mid"), PatternRule.code("mid = .. / .. 2")))))),
+
+    // Two recursive calls around a partition step
+    QUICK_SORT("Quick sort", PatternRule.in(PatternRule.Scope.FUNCTION, PatternRule.all(
+            PatternRule.recursiveCalls(2),
+            PatternRule.any(
+                    PatternRule.named("quick"), PatternRule.named("partition"),
+                    PatternRule.mentions("partition"), PatternRule.mentions("pivot"))))),
+
+    // Two recursive calls on halves followed by a merge
+    MERGE_SORT("Merge sort", PatternRule.in(PatternRule.Scope.FUNCTION, PatternRule.all(
+            PatternRule.recursiveCalls(2),
+            DIVIDE_AND_CONQUER.rule.getCondition(),
+            PatternRule.mentions("merge")))),
+
+    // Indexes moving toward each other from both ends
+    TWO_POINTERS("Two pointers", PatternRule.in(PatternRule.Scope.LOOP, PatternRule.any(
+            PatternRule.all(PatternRule.increments("left"), PatternRule.decrements("right")),
+            PatternRule.all(PatternRule.increments("low"), PatternRule.decrements("high")),
+            PatternRule.all(PatternRule.increments("lo"), PatternRule.decrements("hi")),
+            PatternRule.all(PatternRule.increments("start"), PatternRule.decrements("end")),
+            PatternRule.all(PatternRule.increments("i"), PatternRule.decrements("j"))))),
+
+    // A running total that takes in the entering element and gives back the leaving one
+    SLIDING_WINDOW("Sliding window", PatternRule.in(PatternRule.Scope.LOOP, PatternRule.all(
+            PatternRule.code("+= $a ["),
+            PatternRule.code("-= $a [")))),
+
+    // Child and parent indexes of an array heap, or a function named for sifting
+    HEAP("Heap operations", PatternRule.in(PatternRule.Scope.FUNCTION, PatternRule.any(
+            PatternRule.all(PatternRule.code("2 * $i + 1"), PatternRule.code("2 * $i + 2")),
+            PatternRule.code("( $i - 1 ) / 2"),
+            PatternRule.named("heapify"),
+            PatternRule.named("sift"))));
+
+    private final String displayName;
+    private final PatternRule rule;
+
+    AlgorithmPattern(String displayName, PatternRule rule) {
+        this.displayName = displayName;
+        this.rule = rule;
+    }
+
+    public PatternRule getRule() {
+        return rule;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
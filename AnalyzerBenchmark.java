@@ -0,0 +1,104 @@
+import java.util.function.Supplier;
+
+/**
+ * Measures both analyzers on code nested deeper and deeper, with the same
+ * number of statements at every depth, so time per node should stay flat.
+ *
+ * Each analyzer is timed twice per depth: as it runs, on an explicit stack,
+ * and by the recursion it used before, one call per level of nesting, which
+ * both keep for this comparison. The recursive runs are checked to give the
+ * same result, and are reported as overflowing where the call stack runs out.
+ * Usage: java AnalyzerBenchmark [statements]
+ */
+public class AnalyzerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int[] DEPTHS = {1, 10, 100, 1_000, 10_000, 100_000};
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        CTokenizer cTokenizer = new CTokenizer();
+        JavaTokenizer javaTokenizer = new JavaTokenizer();
+
+        for (int depth : DEPTHS) {
+            FlatAst ast = new CParser().parseFlat(cTokenizer.tokenizeToBuffer(generateC(depth, statements)));
+            report("C", depth, ast);
+        }
+        for (int depth : DEPTHS) {
+            FlatAst ast = new JavaParser().parseFlat(javaTokenizer.tokenizeToBuffer(generateJava(depth, statements)));
+            report("Java", depth, ast);
+        }
+    }
+
+    private static void report(String language, int depth, FlatAst ast) {
+        String time = new TimeComplexityAnalyzer().analyze(ast).toString();
+        String space = new SpaceComplexityAnalyzer().analyze(ast);
+        long timeNanos = time(() -> new TimeComplexityAnalyzer().analyze(ast));
+        long spaceNanos = time(() -> new SpaceComplexityAnalyzer().analyze(ast));
+        String timeRecursive = timeRecursively(time, () -> new TimeComplexityAnalyzer().analyzeRecursively(ast).toString());
+        String spaceRecursive = timeRecursively(space, () -> new SpaceComplexityAnalyzer().analyzeRecursively(ast));
+        System.out.printf("%-5s depth %6d  %d nodes  time %8.1f ms (recursive %s)  space %8.1f ms (recursive %s)"
+                        + "  (%5.1f ns/node)%n",
+                language, depth, ast.size(), timeNanos / 1_000_000.0, timeRecursive, spaceNanos / 1_000_000.0,
+                spaceRecursive, (double) (timeNanos + spaceNanos) / ast.size());
+    }
+
+    // The time of a recursive analysis, which must give expected, or why there is none
+    private static String timeRecursively(String expected, Supplier<String> analyze) {
+        try {
+            if (!analyze.get().equals(expected)) {
+                throw new IllegalStateException("Recursive analysis gave " + analyze.get() + ", not " + expected);
+            }
+            return String.format("%8.1f ms", time(analyze::get) / 1_000_000.0);
+        } catch (StackOverflowError e) {
+            return "stack overflow";
+        }
+    }
+
+    // Best of the measured rounds, in nanoseconds
+    private static long time(Runnable analyze) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            analyze.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            analyze.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static String generateC(int depth, int statements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int nested(int n) {\n    int x = 0;\n");
+        appendNested(sb, depth, statements);
+        sb.append("    return x;\n}\n");
+        return sb.toString();
+    }
+
+    static String generateJava(int depth, int statements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public class Nested {\n    public int nested(int n) {\n        int x = 0;\n");
+        appendNested(sb, depth, statements);
+        sb.append("        return x;\n    }\n}\n");
+        return sb.toString();
+    }
+
+    // Conditionals and loops nested depth deep, with the statements spread over the levels
+    private static void appendNested(StringBuilder sb, int depth, int statements) {
+        int perLevel = Math.max(1, statements / depth);
+        for (int level = 0; level < depth; level++) {
+            sb.append(level % 2 == 0 ? "if (x < n) {\n" : "while (x < n) {\n");
+            for (int i = 0; i < perLevel; i++) {
+                sb.append("x = x + helper(n, ").append(i).append(");\n");
+            }
+        }
+        for (int level = 0; level < depth; level++) {
+            sb.append("}\n");
+        }
+    }
+}
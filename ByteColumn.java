@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+/**
+ * A column of bytes, such as the token or node types, kept the same way as an
+ * {@link IntColumn}.
+ */
+public class ByteColumn {
+
+    private byte[] values;
+
+    public ByteColumn(int capacity) {
+        values = new byte[capacity];
+    }
+
+    // For subclasses that keep their values elsewhere
+    protected ByteColumn() {
+    }
+
+    public byte get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, byte value) {
+        values[index] = value;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Changes the capacity, keeping the values that still fit.
+     */
+    public void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Copies the first count values of other into this column from index at,
+     * which must have room for them.
+     */
+    public void copyFrom(ByteColumn other, int count, int at) {
+        if (values != null && other.values != null) {
+            System.arraycopy(other.values, 0, values, at, count);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            set(at + i, other.get(i));
+        }
+    }
+
+    public void free() {
+    }
+}
@@ -0,0 +1,85 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the end of whitespace, identifier and digit runs in {@link AsciiText}.
+ *
+ * This is the scalar implementation, which looks at one byte at a time and
+ * is what the lexer uses by default. {@link #vectorized()} returns a
+ * VectorByteScanner when it was compiled, from the optional sources in
+ * incubator/, and the jdk.incubator.vector module is present, and falls
+ * back to this otherwise. The vector scanner is many times faster
+ * on long runs, but ordinary source is made of runs of a few bytes, where
+ * the two are about even.
+ */
+public class ByteScanner {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Returns the vectorized scanner, or a scalar one if this runtime does
+     * not have the Vector API.
+     */
+    public static ByteScanner vectorized() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // Loaded by name so that nothing links against the module when it is missing
+                return (ByteScanner) Class.forName("VectorByteScanner").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the scalar scanner
+            }
+        }
+        return new ByteScanner();
+    }
+
+    /**
+     * Returns the index of the first byte in text[pos, end) that is not a
+     * space, tab, form feed, line feed or carriage return, or end.
+     */
+    public int skipWhitespace(AsciiText text, int pos, int end) {
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        while (pos < end && isWhitespace(bytes.get(offset + pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the index of the first byte in text[pos, end) that is not a
+     * letter, digit or underscore, or end.
+     */
+    public int skipIdentifier(AsciiText text, int pos, int end) {
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        while (pos < end && isIdentifierPart(bytes.get(offset + pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the index of the first byte in text[pos, end) that is not a
+     * decimal digit, or end.
+     */
+    public int skipDigits(AsciiText text, int pos, int end) {
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        while (pos < end && isDigit(bytes.get(offset + pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isIdentifierPart(byte b) {
+        int lower = b | 0x20;
+        return (lower >= 'a' && lower <= 'z') || isDigit(b) || b == '_';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+
+/**
+ * The calls between the functions of a {@link FlatAst}, with the strongly
+ * connected components of the graph they form, so that the functions can be
+ * analyzed callees first and calls that close a cycle are known.
+ *
+ * A call is to the function the parser recorded for its name, as
+ * {@link FlatAst#functionDefinition} returns it. Calls to functions not
+ * defined in the tree, such as library functions, are not edges. The graph
+ * is built in one pass over the arena, which parses the bodies of skimmed
+ * functions that make calls; those without calls have no edges and stay
+ * skimmed. The components are found by Tarjan's algorithm, on an explicit
+ * stack, in time linear in the functions and calls.
+ */
+public class CallGraph {
+
+    private final FlatAst ast;
+    // The function nodes, in the order found, and the index of each node among them
+    private int[] functions = new int[16];
+    private int functionCount;
+    private int[] functionIndexes;
+    // The callees of function i are callees[calleeStarts[i]] up to callees[calleeStarts[i + 1]]
+    private int[] calleeStarts;
+    private int[] callees;
+    // The component of each function, numbered in the order Tarjan's algorithm completes them
+    private int[] components;
+    // The functions, callees before callers
+    private int[] bottomUp;
+
+    public CallGraph(FlatAst ast) {
+        this.ast = ast;
+        IntStack calls = new IntStack();
+        // Parsing a body adds its nodes at the end, so the loop comes to them
+        for (int node = 0; node < ast.size(); node++) {
+            if (ast.isFunction(node)) {
+                addFunction(node);
+            } else if (ast.type(node) == ASTNode.Type.FUNCTION_CALL) {
+                calls.push(node);
+            }
+        }
+        functionIndexes = new int[ast.size()];
+        Arrays.fill(functionIndexes, -1);
+        for (int i = 0; i < functionCount; i++) {
+            functionIndexes[functions[i]] = i;
+        }
+        addEdges(calls);
+        findComponents();
+    }
+
+    public int functionCount() {
+        return functionCount;
+    }
+
+    public int callCount() {
+        return callees.length;
+    }
+
+    /**
+     * Returns the function nodes in an order where every function comes after
+     * those it calls, except for calls within a component, which form cycles.
+     */
+    public int[] bottomUp() {
+        return bottomUp.clone();
+    }
+
+    /**
+     * Returns true if caller and callee are functions that can call each
+     * other, directly or through others, which a call from one to the other
+     * then is part of. A function is in the same component as itself.
+     */
+    public boolean inSameComponent(int caller, int callee) {
+        int callerIndex = indexOf(caller);
+        int calleeIndex = indexOf(callee);
+        return callerIndex >= 0 && calleeIndex >= 0 && components[callerIndex] == components[calleeIndex];
+    }
+
+    private void addFunction(int node) {
+        if (functionCount == functions.length) {
+            functions = Arrays.copyOf(functions, functionCount * 2);
+        }
+        functions[functionCount++] = node;
+        if (ast.isSkimmed(node) && (ast.bodyFlags(node) & FlatAst.BODY_CALLS) != 0) {
+            ast.firstChild(node);
+        }
+    }
+
+    private int indexOf(int node) {
+        return node >= 0 && node < functionIndexes.length ? functionIndexes[node] : -1;
+    }
+
+    // Gathers the callees of each function from the calls, in two passes: count, then fill
+    private void addEdges(IntStack calls) {
+        int[] callers = new int[calls.size()];
+        int[] targets = new int[calls.size()];
+        int edges = 0;
+        calleeStarts = new int[functionCount + 1];
+        while (!calls.isEmpty()) {
+            int call = calls.pop();
+            int caller = indexOf(ast.enclosingFunction(call));
+            String name = ast.functionName(call);
+            int callee = name == null ? -1 : indexOf(ast.functionDefinition(name));
+            if (caller >= 0 && callee >= 0) {
+                callers[edges] = caller;
+                targets[edges] = callee;
+                edges++;
+                calleeStarts[caller + 1]++;
+            }
+        }
+        for (int i = 0; i < functionCount; i++) {
+            calleeStarts[i + 1] += calleeStarts[i];
+        }
+        callees = new int[edges];
+        int[] next = Arrays.copyOf(calleeStarts, functionCount);
+        for (int edge = 0; edge < edges; edge++) {
+            callees[next[callers[edge]]++] = targets[edge];
+        }
+    }
+
+    /**
+     * Tarjan's algorithm. A component is complete when the search leaves the
+     * first of its functions it reached, and by then every component that
+     * the function reaches is complete, so completion order is bottom up.
+     */
+    private void findComponents() {
+        components = new int[functionCount];
+        bottomUp = new int[functionCount];
+        int[] visits = new int[functionCount];
+        int[] lowest = new int[functionCount];
+        boolean[] onStack = new boolean[functionCount];
+        // The path of the search, with the next edge of each function on it
+        IntStack path = new IntStack();
+        IntStack nextEdges = new IntStack();
+        // The functions visited and not yet in a component
+        IntStack open = new IntStack();
+        int visited = 0;
+        int componentCount = 0;
+        int done = 0;
+
+        for (int start = 0; start < functionCount; start++) {
+            if (visits[start] != 0) {
+                continue;
+            }
+            visits[start] = lowest[start] = ++visited;
+            path.push(start);
+            nextEdges.push(calleeStarts[start]);
+            open.push(start);
+            onStack[start] = true;
+
+            while (!path.isEmpty()) {
+                int function = path.peek();
+                int edge = nextEdges.pop();
+                if (edge < calleeStarts[function + 1]) {
+                    nextEdges.push(edge + 1);
+                    int callee = callees[edge];
+                    if (visits[callee] == 0) {
+                        visits[callee] = lowest[callee] = ++visited;
+                        path.push(callee);
+                        nextEdges.push(calleeStarts[callee]);
+                        open.push(callee);
+                        onStack[callee] = true;
+                    } else if (onStack[callee]) {
+                        lowest[function] = Math.min(lowest[function], visits[callee]);
+                    }
+                    continue;
+                }
+
+                path.pop();
+                if (lowest[function] == visits[function]) {
+                    int member;
+                    do {
+                        member = open.pop();
+                        onStack[member] = false;
+                        components[member] = componentCount;
+                        bottomUp[done++] = functions[member];
+                    } while (member != function);
+                    componentCount++;
+                }
+                if (!path.isEmpty()) {
+                    int caller = path.peek();
+                    lowest[caller] = Math.min(lowest[caller], lowest[function]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Checks that every way of lexing, parsing and analyzing a source gives the
+ * same result, on seeded random inputs and on the sample files.
+ *
+ * Each input is lexed whole, as a token list, as a stream, as a stream through
+ * the smallest window, in small chunks
+ * split where {@link Lexer#findBoundaries} puts them, and from its bytes with
+ * the scalar and the vectorized {@link ByteScanner}, which must all give the
+ * same tokens. It is then parsed from the buffer, from the stream, skimmed,
+ * and round tripped through {@link ASTNode}, which must all give the same tree
+ * and the same complexities. parseParallel and lexParallel only split large
+ * inputs, so they are checked on the samples repeated and on generated code.
+ * A skimmed tree read after its time budget has passed must still be whole.
+ * Comments far longer than the stream window, closed or not, must stream
+ * within a window that is not let grow, and a string that is never closed
+ * must stop the stream with an error once it outgrows the window.
+ * The files in samples/ must also give the complexities in {@link #EXPECTED},
+ * so that a change to the analyzers that every path agrees on is still caught.
+ *
+ * The random inputs are the same on every run, and the check ends by printing
+ * a digest of every tree and result, so a change that should not alter any
+ * output can be checked by running it before and after. A mismatch prints the
+ * input, or the expected and actual complexities, and exits with status 1.
+ * Usage: java EquivalenceCheck [inputs] [files...]
+ * (20000 inputs and the files in samples/ by default)
+ */
+public class EquivalenceCheck {
+
+    private static final long SEED = 20_000;
+    private static final int MAX_FRAGMENTS = 200;
+    // Characters per chunk when lexing in chunks, small enough that most inputs are split
+    private static final int LEXER_CHUNK = 16;
+    // Characters of the samples repeated, enough for lexParallel, which needs the most, to split them
+    private static final int PARALLEL_SIZE = 1024 * 1024;
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+    // Characters of each comment and string in checkLongComments, far more than the window it streams through
+    private static final int LONG_COMMENT = 1024 * 1024;
+    private static final int SMALL_WINDOW = 16;
+    private static final int MAX_SMALL_WINDOW = 64;
+    // Time budget of the delayed skimmed parse, which the check then waits out
+    private static final long BUDGET_MILLIS = 200;
+
+    // C and Java pieces, with the strings, comments, directives and annotations that are left unclosed
+    private static final String[] FRAGMENTS = {
+            "int ", "void ", "f", "g", "main", "(", ")", "{", "}", ";", "for", "while", "do", "if", "else", "x",
+            "=", "+", "1", "[", "]", ",", "return ", "n", "/", "2", " ", "\n", "mid", "low", "high", "*=", "<", "i",
+            "++", "new ", "merge", "pivot", "case ", "default", ":", "switch", "class ", "struct ", ".", "->",
+            "throws ", "try", "catch", "\"", "'", "\\", "\"a\\\"b\"", "'c'", "/*", "*/", "//", "#define X ", "#",
+            "@a(", "@Override ", "int f() { return f(n - 1); }", "void g(int a) { x = a; }",
+            "int h() { return g(1) + h(); }", "class A { int f() { return 1; } }", "sort(a);",
+            "for (i = 0; i < n; i++) { x++; }", "while (low < high) { mid = (low + high) / 2; }",
+            "do { x++; } while (x < 1);", "int a[3] = {1, 2};",
+    };
+
+    // Time and space complexity of each file in samples/
+    private static final String[][] EXPECTED = {
+            {"BinarySearch.java", "O(log n)", "O(1)"},
+            {"Fib.java", "O(2^n)", "O(n)"},
+            {"Helper.java", "O(n^2)", "O(1)"},
+            {"Log.java", "O(1)", "O(1)"},
+            {"Merge.java", "O(n log n)", "O(n + n)"},
+            {"Nested.java", "O(n^2)", "O(n)"},
+            {"Sorts.java", "O(n log n)", "O(1)"},
+            {"amortized.c", "O(n)", "O(1)"},
+            {"bsearch_iter.c", "O(log n)", "O(1)"},
+            {"bsearch_rec.c", "O(log n)", "O(n)"},
+            {"constloop.c", "O(1)", "O(1)"},
+            {"dowhile.c", "O(n)", "O(1)"},
+            {"fact.c", "O(n)", "O(n)"},
+            {"fib.c", "O(2^n)", "O(n)"},
+            {"helper.c", "O(n^2)", "O(1)"},
+            {"logloop.c", "O(log n)", "O(1)"},
+            {"mergesort.c", "O(n log n)", "O(n)"},
+            {"nested.c", "O(n^2)", "O(1)"},
+            {"nlogn.c", "O(n log n)", "O(1)"},
+            {"noBrace.c", "O(n)", "O(1)"},
+            {"quicksort.c", "O(n^2)", "O(n)"},
+            {"strings.c", "O(n)", "O(1)"},
+            {"triple.c", "O(n^3)", "O(1)"},
+    };
+
+    private static long digest;
+
+    public static void main(String[] args) throws IOException {
+        int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        List<Path> files = new ArrayList<>();
+        boolean samples = args.length <= 1;
+        if (!samples) {
+            for (int i = 1; i < args.length; i++) {
+                files.add(Path.of(args[i]));
+            }
+        } else {
+            try (Stream<Path> list = Files.list(Path.of("samples"))) {
+                list.sorted().forEach(files::add);
+            }
+        }
+
+        Lexer cLexer = new CTokenizer().getLexer();
+        Lexer javaLexer = new JavaTokenizer().getLexer();
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < inputs; i++) {
+            String code = randomInput(random);
+            check("C", code, cLexer, CParser::new);
+            check("Java", code, javaLexer, JavaParser::new);
+        }
+
+        StringBuilder cSamples = new StringBuilder();
+        StringBuilder javaSamples = new StringBuilder();
+        for (Path file : files) {
+            String code = Files.readString(file);
+            String result;
+            if (file.toString().endsWith(".java")) {
+                result = check(file.toString(), code, javaLexer, JavaParser::new);
+                javaSamples.append(code).append('\n');
+            } else {
+                result = check(file.toString(), code, cLexer, CParser::new);
+                cSamples.append(code).append('\n');
+            }
+            if (samples) {
+                checkExpected(file, result);
+            }
+        }
+
+        checkParallel("C samples", repeat(cSamples), cLexer, CParser::new);
+        checkParallel("Java samples", repeat(javaSamples), javaLexer, JavaParser::new);
+        checkParallel("C generated", ParserBenchmark.generateC(20_000, 4), cLexer, CParser::new);
+        checkParallel("Java generated", ParserBenchmark.generateJava(20_000, 4), javaLexer, JavaParser::new);
+        checkDelayedBodies();
+        checkLongComments(cLexer);
+        checkLongComments(javaLexer);
+
+        System.out.printf("%d inputs and %d files agree, with %s  (digest %016x)%n", inputs, files.size(),
+                ByteScanner.vectorized().getClass().getSimpleName(), digest);
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int fragments = random.nextInt(MAX_FRAGMENTS);
+        for (int i = 0; i < fragments; i++) {
+            sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String repeat(StringBuilder samples) {
+        return samples.length() == 0 ? "" : samples.toString().repeat(PARALLEL_SIZE / samples.length() + 1);
+    }
+
+    // Returns the complexities of the eager parse, which every other path has been checked to give
+    private static String check(String name, String code, Lexer lexer, Supplier<Parser> parsers) {
+        TokenBuffer tokens = lexer.lex(code);
+        String expected = dump(tokens);
+        compare(name, code, "token list", expected, dump(TokenBuffer.of(lexer.tokenize(code))));
+        compare(name, code, "stream", expected, dump(lexer.stream(new StringReader(code))));
+        compare(name, code, "small window stream", expected,
+                dump(new TokenStream(lexer, new StringReader(code), SMALL_WINDOW)));
+        compare(name, code, "chunks", expected, dump(lexInChunks(lexer, code)));
+        if (isAscii(code)) {
+            AsciiText bytes = new AsciiText(ByteBuffer.wrap(code.getBytes(StandardCharsets.US_ASCII)));
+            compare(name, code, "scalar scanner", expected, dump(lexer.withByteScanner(new ByteScanner()).lex(bytes)));
+            compare(name, code, "vectorized scanner", expected,
+                    dump(lexer.withByteScanner(ByteScanner.vectorized()).lex(bytes)));
+        }
+
+        FlatAst ast = parsers.get().parseFlat(tokens);
+        String tree = dump(ast.toTree());
+        String result = analyze(ast);
+        FlatAst streamed = parsers.get().parseFlat(lexer.stream(new StringReader(code)));
+        compare(name, code, "streamed parse", tree + result, dump(streamed.toTree()) + analyze(streamed));
+        // Analyzed before the tree is read, so that the analyzers are the first to open skimmed bodies
+        FlatAst skimmed = parsers.get().parseSkimmed(tokens);
+        String skimmedResult = analyze(skimmed);
+        compare(name, code, "skimmed parse", tree + result, dump(skimmed.toTree()) + skimmedResult);
+        FlatAst roundTrip = FlatAst.of(ast.toTree());
+        compare(name, code, "round trip", tree + result, dump(roundTrip.toTree()) + analyze(roundTrip));
+
+        digest = digest * 31 + (tree + result).hashCode();
+        return result;
+    }
+
+    // A file in samples/ without a row in EXPECTED fails too, so that the table is kept complete
+    private static void checkExpected(Path file, String result) {
+        String name = file.getFileName().toString();
+        String expected = null;
+        for (String[] row : EXPECTED) {
+            if (row[0].equals(name)) {
+                expected = row[1] + " Space Complexity: " + row[2];
+            }
+        }
+        if (!result.equals(expected)) {
+            System.out.println(file + ": gives " + result + ", expected " +
+                    (expected == null ? "nothing, as it is not in EXPECTED" : expected));
+            System.exit(1);
+        }
+    }
+
+    private static void checkParallel(String name, String code, Lexer lexer, Supplier<Parser> parsers) {
+        TokenBuffer tokens = lexer.lex(code);
+        compare(name, code, "parallel lexing", dump(tokens), dump(lexer.lexParallel(code, POOL)));
+        FlatAst ast = parsers.get().parseFlat(tokens);
+        FlatAst parallel = parsers.get().parseParallel(tokens, POOL);
+        compare(name, code, "parallel parse", dump(ast) + analyze(ast), dump(parallel) + analyze(parallel));
+        digest = digest * 31 + analyze(ast).hashCode();
+    }
+
+    /**
+     * Parses a skimmed tree under a time budget and reads its bodies only
+     * after longer than the budget has passed. Only the time spent parsing
+     * counts, so the tree must come out as an eager parse has it, not
+     * truncated. k, which calls h, is skimmed, and m loops over its calls.
+     */
+    private static void checkDelayedBodies() {
+        String code = "int h(int n) {\n    int s = 0;\n    for (int i = 0; i < n; i++) {\n        s++;\n    }\n"
+                + "    return s;\n}\nint k(int n) {\n    return h(n);\n}\n"
+                + "int m(int n) {\n    int t = 0;\n    for (int j = 0; j < n; j++) {\n        t += k(n);\n    }\n"
+                + "    return t;\n}\n";
+        TokenBuffer tokens = new CTokenizer().tokenizeToBuffer(code);
+        FlatAst ast = new CParser().parseFlat(tokens);
+        String expected = dump(ast.toTree()) + analyze(ast) + ast.isTruncated();
+
+        CParser parser = new CParser();
+        parser.setBudget(new ParseBudget(Integer.MAX_VALUE, BUDGET_MILLIS));
+        FlatAst skimmed = parser.parseSkimmed(tokens);
+        try {
+            Thread.sleep(2 * BUDGET_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String result = analyze(skimmed);
+        compare("delayed bodies", code, "skimmed parse", expected, dump(skimmed.toTree()) + result + skimmed.isTruncated());
+    }
+
+    /**
+     * Streams a closed block comment full of "*", a line comment and an
+     * unclosed block comment, each far longer than the window, which may not
+     * grow past {@value #MAX_SMALL_WINDOW} characters. Then streams a string
+     * as long that is never closed, which has to fail.
+     */
+    private static void checkLongComments(Lexer lexer) {
+        String code = "int a;\n/* " + "x = 1; *".repeat(LONG_COMMENT / 8) + "/ int b;\n// " + "y".repeat(LONG_COMMENT)
+                + "\nint c;\n/* " + "z = 2; ".repeat(LONG_COMMENT / 7);
+        String expected = dump(lexer.lex(code));
+        TokenStream stream = new TokenStream(lexer, new StringReader(code), SMALL_WINDOW, MAX_SMALL_WINDOW);
+        compare("long comments", "int a; /* ... */ int b; // ... int c; /* ...", "small window stream", expected,
+                dump(stream));
+
+        String string = "int a;\n\"" + "x = 1; ".repeat(LONG_COMMENT / 7);
+        try {
+            dump(new TokenStream(lexer, new StringReader(string), SMALL_WINDOW, MAX_SMALL_WINDOW));
+            compare("long string", "int a; \" ...", "small window stream", "an error", "all tokens");
+        } catch (UncheckedIOException e) {
+            // A string that is never closed cannot be streamed through a window that may not grow
+        }
+    }
+
+    // Lexes the chunks between boundaries separately and joins them, as lexParallel does for large inputs
+    private static TokenBuffer lexInChunks(Lexer lexer, String code) {
+        int[] boundaries = lexer.findBoundaries(code, LEXER_CHUNK);
+        TokenBuffer tokens = new TokenBuffer(code, lexer.getTable());
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            TokenBuffer chunk = new TokenBuffer(code, lexer.getTable());
+            lexer.lex(code, boundaries[i], boundaries[i + 1], true, Lexer.isLineStart(code, boundaries[i], true), chunk);
+            tokens.addAll(chunk);
+        }
+        return tokens;
+    }
+
+    private static void compare(String name, String code, String path, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            System.out.println(name + ": " + path + " differs on input:");
+            System.out.println(code);
+            System.exit(1);
+        }
+    }
+
+    private static String analyze(FlatAst ast) {
+        return new TimeComplexityAnalyzer().analyze(ast) + " " + new SpaceComplexityAnalyzer().analyze(ast);
+    }
+
+    private static boolean isAscii(String code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String dump(TokenBuffer tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            sb.append(tokens.type(i)).append(' ').append(tokens.value(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String dump(Iterator<Token> tokens) {
+        StringBuilder sb = new StringBuilder();
+        while (tokens.hasNext()) {
+            Token token = tokens.next();
+            sb.append(token.getType()).append(' ').append(token.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Every column of every node, in arena order
+    private static String dump(FlatAst ast) {
+        StringBuilder sb = new StringBuilder();
+        for (int node = 0; node < ast.size(); node++) {
+            sb.append(ast.type(node)).append('|').append(ast.value(node)).append('|').append(ast.parent(node))
+                    .append('|').append(ast.tokenStart(node)).append('|').append(ast.tokenEnd(node)).append('|')
+                    .append(ast.functionName(node)).append('|').append(ast.condition(node)).append('|')
+                    .append(ast.initialization(node)).append('|').append(ast.update(node)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String dump(ASTNode tree) {
+        StringBuilder sb = new StringBuilder();
+        dump(tree, sb);
+        return sb.toString();
+    }
+
+    private static void dump(ASTNode node, StringBuilder sb) {
+        sb.append(node).append('|').append(node.getCondition()).append('|').append(node.getInitialization())
+                .append('|').append(node.getUpdate()).append('|').append(node.getFunctionName()).append('{');
+        for (ASTNode child : node.getChildren()) {
+            dump(child, sb);
+        }
+        sb.append('}');
+    }
+}
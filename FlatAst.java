@@ -0,0 +1,579 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AST held in parallel primitive arrays instead of a graph of
+ * {@link ASTNode} objects. A node is an int handle into the arrays; the root
+ * is node 0 and {@link #NONE} stands for a missing node.
+ *
+ * Every node has a type, a parent, a first child, a next sibling, the range of
+ * tokens it was parsed from, the function it is in and an attribute index.
+ * Attributes (the function name, loop header and array dimensions) are rare,
+ * so they live in a second, smaller set of arrays that only the nodes carrying
+ * them point into. The one common case, a call whose function name is its
+ * value, needs no entry.
+ *
+ * Nodes are numbered in the order they are added, and a child is always added
+ * after its parent and after its earlier siblings, so walking the ids in order
+ * meets every parent before its children. Until a skimmed body is parsed (see
+ * below) that walk is also a pre-order traversal, with every subtree in
+ * consecutive slots. A body parsed later lands past all other nodes rather than
+ * after its function, so a subtree is only reliably walked through its
+ * children.
+ *
+ * Equal values share one String, and {@link #trim} drops the spare capacity
+ * and build-only state once the tree is complete.
+ *
+ * The node columns come from a {@link Storage}. In native memory they are
+ * freed with the storage, after which the arena must not be read, values are
+ * not shared and every read of one makes a new String. The attributes stay
+ * on the heap either way; there are few of them, and loop headers are objects.
+ *
+ * A function can be skimmed: its body is skipped by the parser and the node
+ * is left as a leaf with flags summarizing the body. The body is parsed into
+ * the arena, past all existing nodes, the first time the children of the
+ * node are asked for. Reading children may therefore add nodes, so an arena
+ * with skimmed functions must not be read from two threads at once.
+ *
+ * Children are walked with a cursor over the handles:
+ * <pre>
+ * for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class FlatAst {
+
+    public static final int NONE = -1;
+    // Flags of a skimmed function: its body has calls, or "new" or brackets that may allocate
+    public static final int BODY_CALLS = 1;
+    public static final int BODY_ALLOCATES = 2;
+    // Flag of a skimmed function whose body has not been parsed yet
+    private static final int BODY_UNPARSED = 4;
+
+    private static final ASTNode.Type[] TYPES = ASTNode.Type.values();
+    // Attribute index of a node whose only attribute is a function name equal to its value
+    private static final int NAMED = -2;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Storage storage;
+    private final ByteColumn types;
+    private final IntColumn parents;
+    // The innermost function declaration above each node, set as the node is added
+    private final IntColumn functions;
+    private final IntColumn firstChildren;
+    private final IntColumn nextSiblings;
+    // Only used while building, to append a child in constant time
+    private IntColumn lastChildren;
+    // Only used while building on the heap, so that equal values are stored once
+    private Map<String, String> strings;
+    private final IntColumn tokenStarts;
+    private final IntColumn tokenEnds;
+    private final IntColumn attributes;
+    private final StringColumn values;
+    private int size;
+
+    private String[] functionNames;
+    private String[] conditions;
+    private String[] initializations;
+    private String[] updates;
+    private LoopHeader[] loopHeaders;
+    private int[][] dimensions;
+    private int[] bodyFlags;
+    private int attributeCount;
+    // Parses the bodies of skimmed functions when they are first read
+    private BodyParser bodies;
+    // Set when the parse ran out of its budget and the tree stops short of the input
+    private boolean truncated;
+    // The function declared with each name, the last one if there are several
+    private final Map<String, Integer> functionDefinitions = new HashMap<>();
+
+    public FlatAst() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public FlatAst(Storage storage) {
+        this(INITIAL_CAPACITY, storage);
+    }
+
+    public FlatAst(int capacity) {
+        this(capacity, Storage.HEAP);
+    }
+
+    public FlatAst(int capacity, Storage storage) {
+        this.storage = storage;
+        int initial = Math.max(capacity, 16);
+        types = storage.bytes(initial);
+        parents = storage.ints(initial);
+        functions = storage.ints(initial);
+        firstChildren = storage.ints(initial);
+        nextSiblings = storage.ints(initial);
+        lastChildren = storage.ints(initial);
+        tokenStarts = storage.ints(initial);
+        tokenEnds = storage.ints(initial);
+        attributes = storage.ints(initial);
+        values = storage.strings(initial);
+        strings = storage.isOffHeap() ? null : new HashMap<>();
+
+        functionNames = new String[16];
+        conditions = new String[16];
+        initializations = new String[16];
+        updates = new String[16];
+        loopHeaders = new LoopHeader[16];
+        dimensions = new int[16][];
+        bodyFlags = new int[16];
+    }
+
+    /**
+     * Copies an object tree into a new arena, in pre-order. Token ranges are
+     * not known for such a tree and are left as {@link #NONE}.
+     */
+    public static FlatAst of(ASTNode root) {
+        FlatAst ast = new FlatAst();
+        Deque<ASTNode> nodes = new ArrayDeque<>();
+        Deque<Integer> parents = new ArrayDeque<>();
+        nodes.push(root);
+        parents.push(NONE);
+
+        while (!nodes.isEmpty()) {
+            ASTNode node = nodes.pop();
+            int id = ast.add(node.getType(), node.getValue(), parents.pop(), NONE);
+            if (node.getFunctionName() != null) {
+                ast.setFunctionName(id, node.getFunctionName());
+            }
+            if (node.getCondition() != null) {
+                ast.setCondition(id, node.getCondition());
+            }
+            if (node.getInitialization() != null) {
+                ast.setInitialization(id, node.getInitialization());
+            }
+            if (node.getUpdate() != null) {
+                ast.setUpdate(id, node.getUpdate());
+            }
+            if (node.getLoopHeader() != null) {
+                ast.setLoopHeader(id, node.getLoopHeader());
+            }
+            for (int dimension : node.getDimensions()) {
+                ast.addDimension(id, dimension);
+            }
+            if (ast.isFunction(id) && node.getFunctionName() != null) {
+                ast.functionDefinitions.put(node.getFunctionName(), id);
+            }
+
+            // Pushed in reverse so that the first child is added first
+            List<ASTNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                nodes.push(children.get(i));
+                parents.push(id);
+            }
+        }
+        ast.setTruncated(root.isTruncated());
+        ast.trim();
+        return ast;
+    }
+
+    /**
+     * Appends a node as the last child of parent, or as a root if parent is
+     * {@link #NONE}, and returns its handle. Its token range is the single
+     * token at tokenStart until {@link #setEnd} widens it.
+     */
+    public int add(ASTNode.Type type, String value, int parent, int tokenStart) {
+        if (lastChildren == null) {
+            // Adding to a trimmed arena, which only the body of a skimmed function does
+            lastChildren = storage.ints(types.capacity());
+            strings = storage.isOffHeap() ? null : new HashMap<>();
+        }
+        if (size == types.capacity()) {
+            grow();
+        }
+        int id = size++;
+        types.set(id, (byte) type.ordinal());
+        values.set(id, intern(value));
+        parents.set(id, parent);
+        functions.set(id, parent == NONE ? NONE : isFunction(parent) ? parent : functions.get(parent));
+        firstChildren.set(id, NONE);
+        nextSiblings.set(id, NONE);
+        lastChildren.set(id, NONE);
+        tokenStarts.set(id, tokenStart);
+        tokenEnds.set(id, tokenStart == NONE ? NONE : tokenStart + 1);
+        attributes.set(id, NONE);
+
+        if (parent != NONE) {
+            if (firstChildren.get(parent) == NONE) {
+                firstChildren.set(parent, id);
+            } else {
+                nextSiblings.set(lastChildren.get(parent), id);
+            }
+            lastChildren.set(parent, id);
+        }
+        return id;
+    }
+
+    /**
+     * Appends the subtrees below the root of other, in order, as the last
+     * children of parent. Nodes keep their relative order, so node id of
+     * other becomes the returned offset plus id.
+     */
+    public int addSubtrees(FlatAst other, int parent) {
+        int offset = size - 1;
+        for (int id = 1; id < other.size; id++) {
+            int otherParent = other.parents.get(id);
+            int node = add(other.type(id), other.values.get(id), otherParent == 0 ? parent : offset + otherParent,
+                    other.tokenStarts.get(id));
+            tokenEnds.set(node, other.tokenEnds.get(id));
+            if (other.attributes.get(id) == NONE) {
+                continue;
+            }
+            setFunctionName(node, other.functionName(id));
+            if (other.condition(id) != null) {
+                setCondition(node, other.condition(id));
+            }
+            if (other.initialization(id) != null) {
+                setInitialization(node, other.initialization(id));
+            }
+            if (other.update(id) != null) {
+                setUpdate(node, other.update(id));
+            }
+            if (other.loopHeader(id) != null) {
+                setLoopHeader(node, other.loopHeader(id));
+            }
+            for (int i = 0; i < other.dimensionCount(id); i++) {
+                addDimension(node, other.dimension(id, i));
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Shrinks the columns to the nodes added so far, and drops the state only
+     * needed to add nodes. Nodes can still be added afterwards, as the bodies
+     * of skimmed functions are, at the cost of growing the columns again.
+     */
+    public void trim() {
+        resize(size);
+        functionNames = Arrays.copyOf(functionNames, attributeCount);
+        conditions = Arrays.copyOf(conditions, attributeCount);
+        initializations = Arrays.copyOf(initializations, attributeCount);
+        updates = Arrays.copyOf(updates, attributeCount);
+        loopHeaders = Arrays.copyOf(loopHeaders, attributeCount);
+        dimensions = Arrays.copyOf(dimensions, attributeCount);
+        bodyFlags = Arrays.copyOf(bodyFlags, attributeCount);
+        if (lastChildren != null) {
+            lastChildren.free();
+            lastChildren = null;
+        }
+        strings = null;
+    }
+
+    private void grow() {
+        int capacity = size + (size >> 1);
+        resize(capacity);
+        lastChildren.resize(capacity);
+    }
+
+    private void resize(int capacity) {
+        types.resize(capacity);
+        parents.resize(capacity);
+        functions.resize(capacity);
+        firstChildren.resize(capacity);
+        nextSiblings.resize(capacity);
+        tokenStarts.resize(capacity);
+        tokenEnds.resize(capacity);
+        attributes.resize(capacity);
+        values.resize(capacity);
+    }
+
+    private String intern(String value) {
+        return value == null || strings == null ? value : strings.computeIfAbsent(value, v -> v);
+    }
+
+    /**
+     * Sets the index just past the last token of the node.
+     */
+    public void setEnd(int node, int tokenEnd) {
+        tokenEnds.set(node, tokenEnd);
+    }
+
+    /**
+     * Replaces the value of a node, for nodes whose text is only known once
+     * their children have been added.
+     */
+    public void setValue(int node, String value) {
+        values.set(node, intern(value));
+    }
+
+    public void setFunctionName(int node, String functionName) {
+        if (attributes.get(node) == NONE && functionName != null && functionName.equals(values.get(node))) {
+            attributes.set(node, NAMED);
+            return;
+        }
+        int attribute = attribute(node);
+        functionNames[attribute] = functionName;
+    }
+
+    public void setCondition(int node, String condition) {
+        int attribute = attribute(node);
+        conditions[attribute] = condition;
+    }
+
+    public void setInitialization(int node, String initialization) {
+        int attribute = attribute(node);
+        initializations[attribute] = initialization;
+    }
+
+    public void setUpdate(int node, String update) {
+        int attribute = attribute(node);
+        updates[attribute] = update;
+    }
+
+    public void setLoopHeader(int node, LoopHeader loopHeader) {
+        int attribute = attribute(node);
+        loopHeaders[attribute] = loopHeader;
+    }
+
+    public void addDimension(int node, int dimension) {
+        int attribute = attribute(node);
+        int[] current = dimensions[attribute];
+        int[] grown = current == null ? new int[1] : Arrays.copyOf(current, current.length + 1);
+        grown[grown.length - 1] = dimension;
+        dimensions[attribute] = grown;
+    }
+
+    /**
+     * Marks a function as skimmed, with its body not parsed yet, and sets
+     * the {@code BODY_} flags summarizing that body.
+     */
+    public void setSkimmed(int node, int flags) {
+        int attribute = attribute(node);
+        bodyFlags[attribute] = flags | BODY_UNPARSED;
+    }
+
+    /**
+     * Sets what parses the bodies of skimmed functions. It is called with
+     * the arena and the function node, and adds the body as its children.
+     */
+    public void setBodyParser(BodyParser bodies) {
+        this.bodies = bodies;
+    }
+
+    /**
+     * Marks the tree as partial: the parser ran out of its
+     * {@link ParseBudget} and stopped before the end of the input.
+     */
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Records the function declaration node of each name, as the parser
+     * found them. A name recorded before is given the later node.
+     */
+    public void addFunctionDefinitions(Map<String, Integer> definitions) {
+        functionDefinitions.putAll(definitions);
+    }
+
+    /**
+     * Returns the function declared with name, the last one if there are
+     * several, or {@link #NONE}. Functions in the bodies of skimmed
+     * functions are only known once those bodies are parsed.
+     */
+    public int functionDefinition(String name) {
+        Integer node = functionDefinitions.get(name);
+        return node == null ? NONE : node;
+    }
+
+    // Returns the attribute slot of the node, giving it one if it has none yet. The
+    // attribute arrays may be replaced, so callers must index them after this returns.
+    private int attribute(int node) {
+        if (attributes.get(node) >= 0) {
+            return attributes.get(node);
+        }
+        if (attributeCount == functionNames.length) {
+            int capacity = Math.max(attributeCount * 2, 16);
+            functionNames = Arrays.copyOf(functionNames, capacity);
+            conditions = Arrays.copyOf(conditions, capacity);
+            initializations = Arrays.copyOf(initializations, capacity);
+            updates = Arrays.copyOf(updates, capacity);
+            loopHeaders = Arrays.copyOf(loopHeaders, capacity);
+            dimensions = Arrays.copyOf(dimensions, capacity);
+            bodyFlags = Arrays.copyOf(bodyFlags, capacity);
+        }
+        functionNames[attributeCount] = attributes.get(node) == NAMED ? values.get(node) : null;
+        attributes.set(node, attributeCount);
+        return attributeCount++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int root() {
+        return size > 0 ? 0 : NONE;
+    }
+
+    public ASTNode.Type type(int node) {
+        return TYPES[types.get(node)];
+    }
+
+    public String value(int node) {
+        return values.get(node);
+    }
+
+    public int parent(int node) {
+        return parents.get(node);
+    }
+
+    /**
+     * Returns the innermost function declaration or definition that node is
+     * in, not counting node itself, or {@link #NONE} at the top level.
+     */
+    public int enclosingFunction(int node) {
+        return functions.get(node);
+    }
+
+    public boolean isFunction(int node) {
+        int type = types.get(node);
+        return type == ASTNode.Type.FUNCTION_DECLARATION.ordinal() ||
+                type == ASTNode.Type.FUNCTION_DEFINITION.ordinal();
+    }
+
+    /**
+     * Returns true if node is a skimmed function whose body has not been
+     * parsed yet. Its children are only there once they are asked for.
+     */
+    public boolean isSkimmed(int node) {
+        int attribute = attributes.get(node);
+        return attribute >= 0 && (bodyFlags[attribute] & BODY_UNPARSED) != 0;
+    }
+
+    /**
+     * Returns the {@code BODY_} flags of a skimmed function, or 0.
+     */
+    public int bodyFlags(int node) {
+        int attribute = attributes.get(node);
+        return attribute < 0 ? 0 : bodyFlags[attribute] & ~BODY_UNPARSED;
+    }
+
+    public int firstChild(int node) {
+        if (isSkimmed(node)) {
+            parseBody(node);
+        }
+        return firstChildren.get(node);
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings.get(node);
+    }
+
+    public boolean hasChildren(int node) {
+        return firstChild(node) != NONE;
+    }
+
+    private void parseBody(int node) {
+        bodyFlags[attributes.get(node)] &= ~BODY_UNPARSED;
+        bodies.parseBody(this, node);
+    }
+
+    public int tokenStart(int node) {
+        return tokenStarts.get(node);
+    }
+
+    public int tokenEnd(int node) {
+        return tokenEnds.get(node);
+    }
+
+    public String functionName(int node) {
+        int attribute = attributes.get(node);
+        if (attribute == NAMED) {
+            return values.get(node);
+        }
+        return attribute == NONE ? null : functionNames[attribute];
+    }
+
+    public String condition(int node) {
+        int attribute = attributes.get(node);
+        return attribute < 0 ? null : conditions[attribute];
+    }
+
+    public String initialization(int node) {
+        int attribute = attributes.get(node);
+        return attribute < 0 ? null : initializations[attribute];
+    }
+
+    public String update(int node) {
+        int attribute = attributes.get(node);
+        return attribute < 0 ? null : updates[attribute];
+    }
+
+    public LoopHeader loopHeader(int node) {
+        int attribute = attributes.get(node);
+        return attribute < 0 ? null : loopHeaders[attribute];
+    }
+
+    public int dimensionCount(int node) {
+        int attribute = attributes.get(node);
+        if (attribute < 0 || dimensions[attribute] == null) {
+            return 0;
+        }
+        return dimensions[attribute].length;
+    }
+
+    public int dimension(int node, int index) {
+        return dimensions[attributes.get(node)][index];
+    }
+
+    /**
+     * Materializes the arena as an {@link ASTNode} tree, for callers of the
+     * object based API, parsing the bodies of any skimmed functions first.
+     * Returns null if the arena is empty.
+     */
+    public ASTNode toTree() {
+        // Bodies are parsed past the current size, so this also reaches skims inside them
+        for (int id = 0; id < size; id++) {
+            if (isSkimmed(id)) {
+                parseBody(id);
+            }
+        }
+
+        ASTNode[] nodes = new ASTNode[size];
+        // Parents come before their children and siblings in order, so one pass links everything
+        for (int id = 0; id < size; id++) {
+            ASTNode node = new ASTNode(type(id), values.get(id));
+            if (attributes.get(id) != NONE) {
+                node.setFunctionName(functionName(id));
+                node.setCondition(condition(id));
+                node.setInitialization(initialization(id));
+                node.setUpdate(update(id));
+                node.setLoopHeader(loopHeader(id));
+                for (int i = 0; i < dimensionCount(id); i++) {
+                    node.addDimension(dimension(id, i));
+                }
+            }
+            int parent = parents.get(id);
+            if (parent != NONE) {
+                node.setParent(nodes[parent]);
+                nodes[parent].addChild(node);
+            }
+            nodes[id] = node;
+        }
+        if (size > 0) {
+            nodes[0].setTruncated(truncated);
+        }
+        return size > 0 ? nodes[0] : null;
+    }
+
+    /**
+     * Parses the body of a skimmed function into an arena.
+     */
+    public interface BodyParser {
+        void parseBody(FlatAst ast, int function);
+    }
+}
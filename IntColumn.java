@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+/**
+ * A column of ints, one per token or node, as kept by {@link TokenBuffer} and
+ * {@link FlatAst}. This one is an array on the heap; an off-heap
+ * {@link Storage} hands out subclasses backed by native memory.
+ */
+public class IntColumn {
+
+    private int[] values;
+
+    public IntColumn(int capacity) {
+        values = new int[capacity];
+    }
+
+    // For subclasses that keep their values elsewhere
+    protected IntColumn() {
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Changes the capacity, keeping the values that still fit.
+     */
+    public void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * Copies the first count values of other into this column from index at,
+     * which must have room for them.
+     */
+    public void copyFrom(IntColumn other, int count, int at) {
+        if (values != null && other.values != null) {
+            System.arraycopy(other.values, 0, values, at, count);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            set(at + i, other.get(i));
+        }
+    }
+
+    /**
+     * Gives back the memory of the column, which must not be used afterwards.
+     * A heap column leaves that to the garbage collector.
+     */
+    public void free() {
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.Arrays;
+
+/**
+ * A stack of ints, for the {@link FlatAst} handles the parsers keep open.
+ */
+public class IntStack {
+
+    private int[] elements = new int[16];
+    private int size;
+
+    public void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = value;
+    }
+
+    public int pop() {
+        return elements[--size];
+    }
+
+    /**
+     * Returns the top element, or {@link FlatAst#NONE} if the stack is empty.
+     */
+    public int peek() {
+        return size > 0 ? elements[size - 1] : FlatAst.NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -1,392 +1,218 @@
-import java.util.*;
-
-public class JavaParser implements Parser {
-    private List<Token> tokens;
-    private int currentIndex = 0;
-    private ASTNode pendingDoWhileNode;
-    private Map<String, ASTNode> functionDefinitions = new HashMap<>();
-    private Set<String> declaredFunctions = new HashSet<>();
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parser for Java, on the statements of {@link AbstractParser}.
+ *
+ * Blocks, loops, conditionals, declarations, returns, classes and methods
+ * get nodes of their own type. A statement that is nothing but
+ * a call is the call node itself, and any other statement is a STATEMENT
+ * whose value is its text. The calls and "new" expressions in a statement
+ * are its children, and the calls in their arguments are theirs, so every
+ * node sits in the block it belongs to.
+ */
+public class JavaParser extends AbstractParser {
 
     @Override
-    public ASTNode parse(List<Token> tokens) {
-        this.tokens = tokens;
-        this.pendingDoWhileNode = null;
-        this.functionDefinitions.clear();
-        this.declaredFunctions.clear();
-        Stack<ASTNode> stack = new Stack<>();
-        ASTNode root = new ASTNode(ASTNode.Type.PROGRAM, "program");
-        stack.push(root);
-
-        while (currentIndex < tokens.size()) {
-            Token token = tokens.get(currentIndex);
-            switch (token.getType()) {
-                case KEYWORD:
-                    handleKeyword(token, stack);
-                    break;
-                case IDENTIFIER:
-                    handleIdentifier(token, stack);
-                    break;
-                case OPERATOR:
-                case LITERAL:
-                case SEPARATOR:
-                    handleOtherTokens(token, stack);
-                    break;
-                default:
-                    break;
-            }
-            currentIndex++;
-        }
-
-        return root;
-    }
-
-    private void handleKeyword(Token token, Stack<ASTNode> stack) {
-        switch (token.getValue()) {
-            case "for":
-                handleForLoop(token, stack);
-                break;
-            case "while":
-                handleWhileLoop(token, stack);
-                break;
-            case "do":
-                handleDoWhileLoop(token, stack);
-                break;
-            case "if":
-            case "else":
-            case "switch":
-            case "case":
-                handleConditional(token, stack);
-                break;
-            case "int":
-            case "double":
-            case "float":
-            case "char":
-            case "boolean":
-            case "byte":
-            case "short":
-            case "long":
-                handleArrayOrTypeDeclaration(token, stack);
-                break;
-            case "void":
-            case "class":
-            case "interface":
-                handleTypeDeclaration(token, stack);
-                break;
-            case "return":
-                handleReturn(token, stack);
-                break;
-            case "new":
-                handleNewInstance(token, stack);
-                break;
-            case "this":
-            case "super":
-                handleSpecialReference(token, stack);
-                break;
-            default:
-                handleOtherTokens(token, stack);
-                break;
-        }
-    }
-
-    private void handleForLoop(Token token, Stack<ASTNode> stack) {
-        ASTNode loopNode = new ASTNode(ASTNode.Type.FOR_LOOP, token.getValue());
-        stack.peek().addChild(loopNode);
-        stack.push(loopNode);
-
-        parseLoopBounds(loopNode);
+    protected AbstractParser newParser() {
+        return new JavaParser();
     }
 
-    private void parseLoopBounds(ASTNode loopNode) {
-        currentIndex++;
-        if (currentIndex < tokens.size() && tokens.get(currentIndex).getValue().equals("(")) {
-            currentIndex++;
-
-            // Parse initialization
-            StringBuilder initialization = new StringBuilder();
-            while (currentIndex < tokens.size()) {
-                Token token = tokens.get(currentIndex);
-                if (token.getValue().equals(";")) {
-                    currentIndex++;
-                    break;
-                }
-                initialization.append(token.getValue()).append(" ");
+    /**
+     * Splits the members of each top-level class at
+     * {@link TokenBuffer#findStatementBoundaries} and parses the chunks on
+     * the pool. Everything outside class bodies, such as imports, is parsed
+     * on the calling thread.
+     */
+    @Override
+    protected void parseProgramInParallel(TokenBuffer tokens, int program, ForkJoinPool pool) {
+        while (tokens.has(currentIndex) && withinBudget()) {
+            if (tokens.is(currentIndex, "}")) {
+                // A "}" without a matching "{" closes nothing
                 currentIndex++;
+                continue;
             }
-
-            // Parse condition
-            StringBuilder condition = new StringBuilder();
-            while (currentIndex < tokens.size()) {
-                Token token = tokens.get(currentIndex);
-                if (token.getValue().equals(";")) {
-                    currentIndex++;
-                    break;
-                }
-                condition.append(token.getValue()).append(" ");
-                currentIndex++;
+            int open = openStatement(program);
+            if (open == FlatAst.NONE) {
+                continue;
             }
-
-            // Parse update
-            StringBuilder update = new StringBuilder();
-            while (currentIndex < tokens.size()) {
-                Token token = tokens.get(currentIndex);
-                if (token.getValue().equals(")")) {
-                    currentIndex++;
-                    break;
-                }
-                update.append(token.getValue()).append(" ");
-                currentIndex++;
+            if (ast.type(open) == ASTNode.Type.CLASS_OR_INTERFACE && tokens.is(currentIndex, "{")) {
+                // What finish would do, with the members of the body parsed in parallel
+                int body = openStatement(open);
+                parseInParallel(tokens, body, tokens.closing(currentIndex - 1), true, pool);
+                close(body);
+                close(open);
+            } else {
+                finish(open, 1);
             }
-
-            // Set the condition on the loop node
-            loopNode.setInitialization(initialization.toString().trim());
-            loopNode.setCondition(condition.toString().trim());
-            loopNode.setUpdate(update.toString().trim());
         }
     }
 
-    private void parseExpression(ASTNode parentNode) {
-        while (currentIndex < tokens.size()) {
-            Token token = tokens.get(currentIndex);
-            if (token.getValue().equals(";") || token.getValue().equals(")")) {
-                currentIndex++;
+    /**
+     * Works out what the statement at currentIndex is from its leading run of
+     * modifiers, type names and declarators. A name with a parameter list,
+     * followed by "{" once any throws clause is skipped, is a method or
+     * constructor, a FUNCTION_DECLARATION; its name and "{" are left in
+     * {@link #declaredName} and {@link #declaredBody}. A method without a
+     * body is a TYPE_DECLARATION. A statement that is a single call, possibly
+     * qualified as in "System.out.println(x);", is reported as FUNCTION_CALL.
+     */
+    @Override
+    protected ASTNode.Type statementType() {
+        int start = currentIndex;
+        boolean declaration = isDeclarationStart(start);
+        boolean array = false;
+        boolean aggregate = false;
+        boolean qualifiedName = true;
+
+        int index = start;
+        while (tokens.has(index) && isDeclaratorToken(index)) {
+            if (tokens.type(index) == Token.Type.IDENTIFIER && tokens.has(index + 1) && tokens.is(index + 1, "(")) {
+                int close = closingParenthesis(index + 1);
+                if (close == FlatAst.NONE) {
+                    break;
+                }
+                int body = skipQualifiers(close + 1);
+                if (!(index > start && tokens.is(index - 1, ".")) && tokens.has(body) && tokens.is(body, "{")) {
+                    declaredName = index;
+                    declaredBody = body;
+                    return ASTNode.Type.FUNCTION_DECLARATION;
+                }
+                if (qualifiedName && tokens.has(close + 1) && tokens.is(close + 1, ";")) {
+                    return ASTNode.Type.FUNCTION_CALL;
+                }
+                if (declaration && index > start && tokens.has(body) && tokens.is(body, ";")) {
+                    declaredName = index;
+                    declaredBody = body;
+                    return ASTNode.Type.TYPE_DECLARATION;
+                }
                 break;
             }
-            parentNode.addChild(new ASTNode(ASTNode.Type.EXPRESSION, token.getValue()));
-            currentIndex++;
+            if (tokens.is(index, "[")) {
+                array = true;
+            } else if (tokens.is(index, "class") || tokens.is(index, "interface") || tokens.is(index, "enum")) {
+                aggregate = true;
+            }
+            if (!tokens.is(index, ".") && !tokens.is(index, "this") && !tokens.is(index, "super") &&
+                    tokens.type(index) != Token.Type.IDENTIFIER) {
+                qualifiedName = false;
+            }
+            index++;
         }
-    }
 
-    private void handleWhileLoop(Token token, Stack<ASTNode> stack) {
-        // Check if this 'while' is part of a do-while loop
-        if (pendingDoWhileNode != null) {
-            parseWhileCondition(pendingDoWhileNode);
-            pendingDoWhileNode = null;
-        } else {
-            ASTNode loopNode = new ASTNode(ASTNode.Type.WHILE_LOOP, token.getValue());
-            stack.peek().addChild(loopNode);
-            stack.push(loopNode);
-
-            // Parse while loop condition
-            parseWhileCondition(loopNode);
+        if (aggregate && tokens.has(index) && tokens.is(index, "{")) {
+            return ASTNode.Type.CLASS_OR_INTERFACE;
         }
-    }
-
-    private void parseWhileCondition(ASTNode loopNode) {
-        currentIndex++;
-        if (currentIndex < tokens.size() && tokens.get(currentIndex).getValue().equals("(")) {
-            currentIndex++;
-
-            StringBuilder condition = new StringBuilder();
-            while (currentIndex < tokens.size()) {
-                Token t = tokens.get(currentIndex);
-                if (t.getValue().equals(")")) {
-                    currentIndex++;
-                    break;
-                }
-                condition.append(t.getValue()).append(" ");
-                currentIndex++;
-            }
-            loopNode.setCondition(condition.toString().trim());
+        if (declaration) {
+            return array ? ASTNode.Type.ARRAY_DECLARATION : ASTNode.Type.VARIABLE_DECLARATION;
         }
-    }
-
-    private void handleDoWhileLoop(Token token, Stack<ASTNode> stack) {
-        ASTNode loopNode = new ASTNode(ASTNode.Type.DO_WHILE_LOOP, token.getValue());
-        stack.peek().addChild(loopNode);
-        stack.push(loopNode);
-    }
-
-    private void handleConditional(Token token, Stack<ASTNode> stack) {
-        ASTNode conditionalNode = new ASTNode(ASTNode.Type.CONDITIONAL, token.getValue());
-        stack.peek().addChild(conditionalNode);
-        stack.push(conditionalNode);
-    }
-
-    private void handleTypeDeclaration(Token token, Stack<ASTNode> stack) {
-        ASTNode typeDeclNode = new ASTNode(ASTNode.Type.TYPE_DECLARATION, token.getValue());
-        stack.peek().addChild(typeDeclNode);
-    }
-
-    private void handleArrayOrTypeDeclaration(Token token, Stack<ASTNode> stack) {
-        ASTNode currentNode = stack.peek();
-        ASTNode typeDeclNode = new ASTNode(ASTNode.Type.TYPE_DECLARATION, token.getValue());
-        currentNode.addChild(typeDeclNode);
-
-        currentIndex++;
-        if (currentIndex < tokens.size()) {
-            Token nextToken = tokens.get(currentIndex);
-            if (nextToken.getValue().equals("[")) {
-                ASTNode arrayDeclNode = new ASTNode(ASTNode.Type.ARRAY_DECLARATION, token.getValue());
-                typeDeclNode.addChild(arrayDeclNode);
-
-                currentIndex++;
-                if (currentIndex < tokens.size()) {
-                    nextToken = tokens.get(currentIndex);
-                    if (nextToken.getType() == Token.Type.LITERAL) {
-                        ASTNode sizeNode = new ASTNode(ASTNode.Type.LITERAL, nextToken.getValue());
-                        arrayDeclNode.addChild(sizeNode);
-
-                        currentIndex++;
-                        if (currentIndex < tokens.size()) {
-                            nextToken = tokens.get(currentIndex);
-                            if (nextToken.getValue().equals("]")) {
-                                currentIndex++;
-                            }
-                        }
-                    }
-                }
+        return ASTNode.Type.STATEMENT;
+    }
+
+    // A primitive type or modifier, or a type name followed by the declared name, "<" or "[]"
+    private boolean isDeclarationStart(int index) {
+        if (tokens.type(index) == Token.Type.KEYWORD) {
+            switch (tokens.value(index)) {
+                case "int":
+                case "double":
+                case "float":
+                case "char":
+                case "boolean":
+                case "byte":
+                case "short":
+                case "long":
+                case "void":
+                case "final":
+                case "static":
+                case "public":
+                case "private":
+                case "protected":
+                case "abstract":
+                case "native":
+                case "synchronized":
+                case "transient":
+                case "volatile":
+                case "strictfp":
+                case "default":
+                    return true;
+                default:
+                    return false;
             }
         }
-    }
-
-    private void handleReturn(Token token, Stack<ASTNode> stack) {
-        ASTNode returnNode = new ASTNode(ASTNode.Type.RETURN_STATEMENT, token.getValue());
-        stack.peek().addChild(returnNode);
-    }
-
-    private void handleNewInstance(Token token, Stack<ASTNode> stack) {
-        ASTNode newInstanceNode = new ASTNode(ASTNode.Type.NEW_INSTANCE, token.getValue());
-        stack.peek().addChild(newInstanceNode);
-    }
-
-    private void handleSpecialReference(Token token, Stack<ASTNode> stack) {
-        ASTNode specialRefNode = new ASTNode(ASTNode.Type.SPECIAL_REFERENCE, token.getValue());
-        stack.peek().addChild(specialRefNode);
-    }
-
-    private void handleIdentifier(Token token, Stack<ASTNode> stack) {
-        if (currentIndex + 1 < tokens.size()) {
-            Token nextToken = tokens.get(currentIndex + 1);
-            if (nextToken.getValue().equals("(")) {
-                if (isFunctionDeclaration(currentIndex)) {
-                    handleFunctionDeclaration(token, stack);
-                } else {
-                    handleFunctionCall(token, stack);
-                }
-                return;
-            }
+        return tokens.type(index) == Token.Type.IDENTIFIER && tokens.has(index + 2) &&
+                (tokens.type(index + 1) == Token.Type.IDENTIFIER || tokens.is(index + 1, "<") ||
+                        tokens.is(index + 1, "[") && tokens.is(index + 2, "]"));
+    }
+
+    // "new" starts an expression, so it ends the run of declarators
+    private boolean isDeclaratorToken(int index) {
+        switch (tokens.type(index)) {
+            case KEYWORD:
+                return !tokens.is(index, "new");
+            case IDENTIFIER:
+                return true;
+            case OPERATOR:
+            case SEPARATOR:
+                return tokens.is(index, "[") || tokens.is(index, "]") || tokens.is(index, "<") ||
+                        tokens.is(index, ">") || tokens.is(index, ">>") || tokens.is(index, ">>>") ||
+                        tokens.is(index, ",") || tokens.is(index, ".");
+            default:
+                return false;
         }
-        handleOtherTokens(token, stack);
     }
 
-    private boolean isFunctionDeclaration(int identifierIndex) {
-        if (identifierIndex > 0) {
-            Token prevToken = tokens.get(identifierIndex - 1);
-            if (prevToken.getType() == Token.Type.KEYWORD) {
-                String keyword = prevToken.getValue();
-                if (keyword.equals("int") || keyword.equals("void") || keyword.equals("double") ||
-                        keyword.equals("float") || keyword.equals("char") || keyword.equals("boolean") ||
-                        keyword.equals("long") || keyword.equals("short") || keyword.equals("byte")) {
-                    int tempIndex = identifierIndex + 1;
-                    int parenDepth = 0;
-                    while (tempIndex < tokens.size()) {
-                        String val = tokens.get(tempIndex).getValue();
-                        if (val.equals("("))
-                            parenDepth++;
-                        else if (val.equals(")")) {
-                            parenDepth--;
-                            if (parenDepth == 0) {
-                                tempIndex++;
-                                break;
-                            }
-                        }
-                        tempIndex++;
-                    }
-
-                    while (tempIndex < tokens.size()) {
-                        String val = tokens.get(tempIndex).getValue();
-                        if (val.equals("{"))
-                            return true;
-                        if (val.equals(";"))
-                            return false;
-                        tempIndex++;
-                    }
-                }
-            }
+    // Skips a throws clause between the parameter list and the body
+    private int skipQualifiers(int index) {
+        while (tokens.has(index) && (tokens.type(index) == Token.Type.KEYWORD ||
+                tokens.type(index) == Token.Type.IDENTIFIER || tokens.is(index, ",") || tokens.is(index, "."))) {
+            index++;
         }
-        return false;
+        return index;
     }
 
-    private void handleFunctionDeclaration(Token token, Stack<ASTNode> stack) {
-        String functionName = token.getValue();
-        ASTNode functionNode = new ASTNode(ASTNode.Type.FUNCTION_DECLARATION, functionName);
-        functionNode.setFunctionName(functionName);
-        stack.peek().addChild(functionNode);
-        stack.push(functionNode);
-
-        functionDefinitions.put(functionName, functionNode);
-        declaredFunctions.add(functionName);
-
-        currentIndex++;
-        int parenDepth = 0;
-        while (currentIndex < tokens.size()) {
-            String val = tokens.get(currentIndex).getValue();
-            if (val.equals("("))
-                parenDepth++;
-            else if (val.equals(")")) {
-                parenDepth--;
-                if (parenDepth == 0)
-                    break;
-            }
-            currentIndex++;
+    // A "case" or "default" label, or a name followed by ":" such as "outer:"
+    @Override
+    protected boolean isLabel(int start) {
+        if (tokens.type(start) == Token.Type.KEYWORD) {
+            return tokens.is(start, "case") || tokens.is(start, "default") && isLabelEnd(start + 1);
         }
+        return tokens.type(start) == Token.Type.IDENTIFIER && isLabelEnd(start + 1);
     }
 
-    private void handleFunctionCall(Token token, Stack<ASTNode> stack) {
-        String functionName = token.getValue();
-        ASTNode currentFunction = findCurrentFunction(stack);
-
-        // Check if this is a recursive call
-        if (currentFunction != null && currentFunction.getFunctionName() != null &&
-                currentFunction.getFunctionName().equals(functionName)) {
-            // Recursive call
-            ASTNode recursiveNode = new ASTNode(ASTNode.Type.RECURSIVE_CALL, functionName);
-            recursiveNode.setFunctionName(functionName);
-            recursiveNode.setCode(functionName);
-            stack.peek().addChild(recursiveNode);
-        } else {
-            // Regular function call
-            ASTNode functionCallNode = new ASTNode(ASTNode.Type.FUNCTION_CALL, functionName);
-            functionCallNode.setFunctionName(functionName);
-            functionCallNode.setCode(functionName);
-            stack.peek().addChild(functionCallNode);
-        }
-
-        currentIndex++;
-        int parenDepth = 0;
-        while (currentIndex < tokens.size()) {
-            String val = tokens.get(currentIndex).getValue();
-            if (val.equals("("))
-                parenDepth++;
-            else if (val.equals(")")) {
-                parenDepth--;
-                if (parenDepth == 0)
-                    break;
+    // A "case" or "default" label up to its ":" or "->", or a label such as "outer:"
+    @Override
+    protected int parseLabel(int parent) {
+        int start = currentIndex;
+        int labelNode = ast.add(ASTNode.Type.STATEMENT, null, parent, start);
+
+        text.setLength(0);
+        while (tokens.has(currentIndex) && !isStatementEnd(currentIndex)) {
+            int index = currentIndex++;
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            tokens.appendTo(index, text);
+            if (isLabelEnd(index)) {
+                break;
             }
-            currentIndex++;
         }
+        ast.setValue(labelNode, text.toString());
+        ast.setEnd(labelNode, currentIndex);
+        return FlatAst.NONE;
     }
 
-    private ASTNode findCurrentFunction(Stack<ASTNode> stack) {
-        for (int i = stack.size() - 1; i >= 0; i--) {
-            ASTNode node = stack.get(i);
-            if (node.getType() == ASTNode.Type.FUNCTION_DECLARATION ||
-                    node.getType() == ASTNode.Type.FUNCTION_DEFINITION) {
-                return node;
-            }
-        }
-        return null;
+    private boolean isLabelEnd(int index) {
+        return tokens.has(index) && (tokens.is(index, ":") || tokens.is(index, "->"));
     }
 
-    private void handleOtherTokens(Token token, Stack<ASTNode> stack) {
-        ASTNode currentNode = stack.peek();
-        currentNode.addChild(new ASTNode(ASTNode.Type.EXPRESSION, token.getValue()));
+    // After "=", "," or the "[]" of an array creation
+    @Override
+    protected boolean startsInitializer(int previous) {
+        return previous != FlatAst.NONE && (tokens.is(previous, "=") || tokens.is(previous, ",") ||
+                tokens.is(previous, "]"));
+    }
 
-        if (token.getValue().equals("}") && currentNode.getType() != ASTNode.Type.PROGRAM) {
-            if (currentNode.getType() == ASTNode.Type.DO_WHILE_LOOP) {
-                pendingDoWhileNode = currentNode;
-            }
-            stack.pop();
-        }
+    @Override
+    protected boolean createsInstance(int index) {
+        return tokens.is(index, "new");
     }
 }
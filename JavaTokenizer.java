@@ -1,7 +1,7 @@
-import java.util.ArrayList;
+import java.io.Reader;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
 
 public class JavaTokenizer {
 
@@ -22,98 +22,30 @@ public class JavaTokenizer {
             "(", ")", "{", "}", "[", "]", ";", ",", ".", ":", "->", "::"
     };
 
-    private static final String[] SEPARATOR_PATTERNS = {
-            "\\(", "\\)", "\\{", "\\}", "\\[", "\\]", ";", ",", "\\.", ":", "->", "::"
-    };
+    // Skips comments and annotations
+    private static final Lexer LEXER = new Lexer(KEYWORDS, OPERATORS, SEPARATORS, false, true);
 
     public List<Token> tokenize(String code) {
-        List<Token> tokens = new ArrayList<>();
-
-        code = code.replaceAll("//.*|/\\*((.|\\n)(?!=*/))+\\*/", "");
-
-        String tokenPatterns = String.join("|", createTokenPatterns());
-        Pattern tokenPattern = Pattern.compile(tokenPatterns);
-        Matcher matcher = tokenPattern.matcher(code);
-
-        while (matcher.find()) {
-            String tokenValue = matcher.group();
-            Token token = identifyToken(tokenValue);
-            tokens.add(token);
-        }
-
-        return tokens;
-    }
-
-    private List<String> createTokenPatterns() {
-        List<String> patterns = new ArrayList<>();
-
-        patterns.add("\\b(" + String.join("|", KEYWORDS) + ")\\b");
-
-        // Escape operators for regex (they contain special chars like +, *, |, etc.)
-        for (String op : OPERATORS) {
-            patterns.add(Pattern.quote(op));
-        }
-
-        // Separator patterns are already escaped
-        patterns.addAll(createStringPatterns(SEPARATOR_PATTERNS));
-
-        patterns.add("[a-zA-Z_][a-zA-Z0-9_]*");
-        patterns.add("\\d+");
-        patterns.add("\"(\\\\.|[^\"])*\"");
-        patterns.add("'.'");
-        return patterns;
-    }
-
-    private List<String> createStringPatterns(String[] strings) {
-        List<String> patterns = new ArrayList<>();
-        for (String s : strings) {
-            patterns.add(s);
-        }
-        return patterns;
+        return LEXER.tokenize(code);
     }
 
-    private Token identifyToken(String tokenValue) {
-        if (isKeyword(tokenValue)) {
-            return new Token(Token.Type.KEYWORD, tokenValue);
-        } else if (isOperator(tokenValue)) {
-            return new Token(Token.Type.OPERATOR, tokenValue);
-        } else if (isSeparator(tokenValue)) {
-            return new Token(Token.Type.SEPARATOR, tokenValue);
-        } else if (tokenValue.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
-            return new Token(Token.Type.IDENTIFIER, tokenValue);
-        } else if (tokenValue.matches("\\d+")) {
-            return new Token(Token.Type.LITERAL, tokenValue);
-        } else if (tokenValue.matches("\"(\\\\.|[^\"])*\"") || tokenValue.matches("'.'")) {
-            return new Token(Token.Type.LITERAL, tokenValue);
-        } else {
-            return new Token(Token.Type.UNKNOWN, tokenValue);
-        }
+    public TokenBuffer tokenizeToBuffer(CharSequence code) {
+        return LEXER.lex(code);
     }
 
-    private boolean isKeyword(String tokenValue) {
-        for (String keyword : KEYWORDS) {
-            if (keyword.equals(tokenValue)) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * Tokenizes large inputs in parallel chunks on the common pool. The result
+     * is identical to {@link #tokenizeToBuffer}.
+     */
+    public TokenBuffer tokenizeParallel(CharSequence code) {
+        return LEXER.lexParallel(code, ForkJoinPool.commonPool());
     }
 
-    private boolean isOperator(String tokenValue) {
-        for (String operator : OPERATORS) {
-            if (operator.equals(tokenValue)) {
-                return true;
-            }
-        }
-        return false;
+    public Iterator<Token> tokenize(Reader reader) {
+        return LEXER.stream(reader);
     }
 
-    private boolean isSeparator(String tokenValue) {
-        for (String separator : SEPARATORS) {
-            if (separator.equals(tokenValue)) {
-                return true;
-            }
-        }
-        return false;
+    public Lexer getLexer() {
+        return LEXER;
     }
 }
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tells C from Java source.
+ *
+ * The file extension decides when there is one. Otherwise only the first
+ * {@link #PREFIX_LENGTH} characters are looked at, in a single pass that
+ * scores Java and C signals together: words such as "import" or "class"
+ * against preprocessor directives, "printf" or "int main". Comments, string
+ * and character literals are skipped, so a C comment that mentions "import"
+ * does not make the file Java. Detecting a file never reads more than that
+ * prefix from disk.
+ */
+public class LanguageDetector {
+
+    public static final String JAVA = "Java";
+    public static final String C = "C";
+    public static final String UNSUPPORTED = "Unsupported";
+
+    public static final int PREFIX_LENGTH = 4 * 1024;
+
+    private static final int STRONG = 3;
+    private static final int MEDIUM = 2;
+    private static final int WEAK = 1;
+
+    private LanguageDetector() {
+    }
+
+    /**
+     * Returns the language of the file at path, reading at most the prefix.
+     */
+    public static String detect(Path path) throws IOException {
+        String language = fromFileName(path.getFileName().toString());
+        if (language != null) {
+            return language;
+        }
+
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (prefix.hasRemaining() && channel.read(prefix) > 0) {
+                // Keep reading until the prefix is full or the file ends
+            }
+        }
+        prefix.flip();
+        // Every signal is ASCII, so a byte-per-char decoding is enough
+        return detect(StandardCharsets.ISO_8859_1.decode(prefix));
+    }
+
+    /**
+     * Returns the language implied by the file extension, or null if the
+     * extension does not say.
+     */
+    public static String fromFileName(String fileName) {
+        if (fileName.endsWith(".java")) {
+            return JAVA;
+        } else if (fileName.endsWith(".c") || fileName.endsWith(".h")) {
+            return C;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the language of the code judging by its prefix, or
+     * {@link #UNSUPPORTED} if there is no signal for either language. Ties go
+     * to Java.
+     */
+    public static String detect(CharSequence code) {
+        int limit = Math.min(code.length(), PREFIX_LENGTH);
+        int javaScore = 0;
+        int cScore = 0;
+        boolean lineStart = true;
+        String previousWord = null;
+
+        int pos = 0;
+        while (pos < limit) {
+            char c = code.charAt(pos);
+            char next = pos + 1 < limit ? code.charAt(pos + 1) : 0;
+
+            if (c == '/' && next == '/') {
+                pos = skipLine(code, pos + 2, limit);
+                continue;
+            } else if (c == '/' && next == '*') {
+                pos = skipBlockComment(code, pos + 2, limit);
+            } else if (c == '"' || c == '\'') {
+                pos = skipLiteral(code, pos, limit);
+            } else if (c == '#' && lineStart) {
+                int start = skipBlanks(code, pos + 1, limit);
+                int end = skipWord(code, start, limit);
+                if (isDirective(code.subSequence(start, end).toString())) {
+                    cScore += STRONG;
+                }
+                pos = skipLine(code, end, limit);
+                continue;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = skipWord(code, pos, limit);
+                String word = code.subSequence(pos, end).toString();
+                javaScore += javaSignal(word, lineStart, previousWord);
+                cScore += cSignal(word, previousWord);
+                previousWord = word;
+                pos = end;
+            } else {
+                if (c == '\n' || c == '\r') {
+                    lineStart = true;
+                } else if (c != ' ' && c != '\t') {
+                    lineStart = false;
+                    previousWord = null;
+                }
+                pos++;
+                continue;
+            }
+            lineStart = false;
+        }
+
+        if (javaScore == 0 && cScore == 0) {
+            return UNSUPPORTED;
+        }
+        return javaScore >= cScore ? JAVA : C;
+    }
+
+    private static int javaSignal(String word, boolean lineStart, String previousWord) {
+        switch (word) {
+            case "import":
+            case "package":
+                return lineStart ? STRONG : 0;
+            case "class":
+                return "public".equals(previousWord) ? STRONG : MEDIUM;
+            case "interface":
+            case "extends":
+            case "implements":
+                return MEDIUM;
+            case "public":
+            case "private":
+            case "protected":
+            case "final":
+            case "boolean":
+            case "String":
+            case "System":
+                return WEAK;
+            default:
+                return 0;
+        }
+    }
+
+    private static int cSignal(String word, String previousWord) {
+        switch (word) {
+            case "main":
+                return "int".equals(previousWord) ? MEDIUM : 0;
+            case "printf":
+            case "scanf":
+            case "malloc":
+            case "free":
+            case "typedef":
+            case "sizeof":
+            case "struct":
+            case "unsigned":
+            case "NULL":
+                return WEAK;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isDirective(String word) {
+        switch (word) {
+            case "include":
+            case "define":
+            case "ifdef":
+            case "ifndef":
+            case "pragma":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int skipWord(CharSequence code, int pos, int limit) {
+        while (pos < limit && Character.isJavaIdentifierPart(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipBlanks(CharSequence code, int pos, int limit) {
+        while (pos < limit && (code.charAt(pos) == ' ' || code.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipLine(CharSequence code, int pos, int limit) {
+        while (pos < limit && code.charAt(pos) != '\n' && code.charAt(pos) != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipBlockComment(CharSequence code, int pos, int limit) {
+        while (pos + 1 < limit && !(code.charAt(pos) == '*' && code.charAt(pos + 1) == '/')) {
+            pos++;
+        }
+        return Math.min(pos + 2, limit);
+    }
+
+    // Skips a string or character literal, which ends at its closing quote or the end of the line
+    private static int skipLiteral(CharSequence code, int pos, int limit) {
+        char quote = code.charAt(pos);
+        pos++;
+        while (pos < limit) {
+            char c = code.charAt(pos);
+            if (c == quote) {
+                return pos + 1;
+            }
+            if (c == '\n' || c == '\r') {
+                return pos;
+            }
+            pos += c == '\\' ? 2 : 1;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,565 @@
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Single-pass, character-at-a-time lexer shared by {@link JavaTokenizer} and
+ * {@link CTokenizer}. All tables are built once per language, so tokenizing
+ * never compiles a pattern or runs a regex.
+ *
+ * Operators and separators are matched in the order they are declared, the
+ * first candidate that matches wins. This keeps the token stream identical to
+ * the alternation the tokenizers used before (for example "==" is still
+ * emitted as two "=" tokens). Tokens are recorded as offsets in a
+ * {@link TokenBuffer}; materialized keywords, operators and separators are
+ * the shared flyweights of the {@link TokenTable}.
+ *
+ * Comments never produce tokens. Depending on the language, preprocessor
+ * lines (a '#' that starts a line, up to the end of the line including
+ * backslash continuations) and annotations ('@', a possibly qualified name
+ * and an optional argument list) are skipped as well. On {@link AsciiText}
+ * input, whitespace, identifier and digit runs are found by a
+ * {@link ByteScanner}, which is scalar unless {@link #withByteScanner} says
+ * otherwise.
+ *
+ * Lexing is linear in the input length, whatever the input. Every character
+ * is examined a bounded number of times: a string that is never closed is
+ * scanned once, and every later quote is known to be unclosed as well (see
+ * {@link #scanString}); a comment or annotation argument list that is never
+ * closed runs to the end of the input.
+ */
+public class Lexer {
+
+    // Below this many characters per chunk, forking costs more than it saves
+    private static final int MIN_PARALLEL_CHUNK = 256 * 1024;
+
+    private static final ByteScanner SCALAR_SCANNER = new ByteScanner();
+
+    private final TokenTable table;
+    private final boolean skipDirectives;
+    private final boolean skipAnnotations;
+    private final ByteScanner byteScanner;
+
+    public Lexer(String[] keywords, String[] operators, String[] separators, boolean skipDirectives,
+            boolean skipAnnotations) {
+        this(new TokenTable(keywords, operators, separators), skipDirectives, skipAnnotations, SCALAR_SCANNER);
+    }
+
+    private Lexer(TokenTable table, boolean skipDirectives, boolean skipAnnotations, ByteScanner byteScanner) {
+        this.table = table;
+        this.skipDirectives = skipDirectives;
+        this.skipAnnotations = skipAnnotations;
+        this.byteScanner = byteScanner;
+    }
+
+    /**
+     * Returns a lexer for the same language that scans {@link AsciiText} runs
+     * with the given scanner, such as {@link ByteScanner#vectorized()} for
+     * input with long runs.
+     */
+    public Lexer withByteScanner(ByteScanner scanner) {
+        return new Lexer(table, skipDirectives, skipAnnotations, scanner);
+    }
+
+    public List<Token> tokenize(CharSequence code) {
+        return lex(code).toList();
+    }
+
+    /**
+     * Lexes the whole input into a {@link TokenBuffer} that references the
+     * source by offset, without materializing any token values.
+     */
+    public TokenBuffer lex(CharSequence code) {
+        return lex(code, Storage.HEAP);
+    }
+
+    /**
+     * Like {@link #lex(CharSequence)}, but keeps the tokens in the given
+     * storage, where the parsers then build the tree as well.
+     */
+    public TokenBuffer lex(CharSequence code, Storage storage) {
+        int length = code.length();
+        // Roughly one token per five characters of typical source
+        TokenBuffer tokens = new TokenBuffer(code, table, length / 5, storage);
+        lex(code, 0, length, true, true, tokens);
+        return tokens;
+    }
+
+    /**
+     * Like {@link #lex(CharSequence)}, but lexes into an existing buffer of
+     * this lexer, which is reset to the input first, so that its columns are
+     * reused.
+     */
+    public TokenBuffer lex(CharSequence code, TokenBuffer tokens) {
+        tokens.reset(code);
+        lex(code, 0, code.length(), true, true, tokens);
+        return tokens;
+    }
+
+    /**
+     * Lexes a stream read through a bounded window. Tokens are produced lazily,
+     * so memory stays proportional to the window rather than to the input.
+     */
+    public Iterator<Token> stream(Reader reader) {
+        return new TokenStream(this, reader);
+    }
+
+    /**
+     * Lexes the input in chunks on the given pool. Chunk boundaries are chosen
+     * by {@link #findBoundaries} so that no token, string, character literal
+     * or comment spans two chunks, which makes the stitched result identical
+     * to {@link #lex(CharSequence)}.
+     */
+    public TokenBuffer lexParallel(CharSequence code, ForkJoinPool pool) {
+        int length = code.length();
+        int chunkSize = Math.max(MIN_PARALLEL_CHUNK, length / (pool.getParallelism() * 4));
+        if (pool.getParallelism() < 2 || length < 2 * chunkSize) {
+            return lex(code);
+        }
+
+        int[] boundaries = findBoundaries(code, chunkSize);
+        List<ForkJoinTask<TokenBuffer>> chunks = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i + 1 < boundaries.length; i++) {
+            int start = boundaries[i];
+            int end = boundaries[i + 1];
+            chunks.add(pool.submit(() -> {
+                TokenBuffer chunk = new TokenBuffer(code, table, (end - start) / 5);
+                lex(code, start, end, true, isLineStart(code, start, true), chunk);
+                return chunk;
+            }));
+        }
+
+        TokenBuffer tokens = new TokenBuffer(code, table, length / 5);
+        for (ForkJoinTask<TokenBuffer> chunk : chunks) {
+            tokens.addAll(chunk.join());
+        }
+        return tokens;
+    }
+
+    /**
+     * Pre-scans the input for chunk boundaries roughly chunkSize apart. A
+     * boundary is a whitespace character the lexer reaches between tokens, so
+     * it is never inside a string, a character literal, a comment, a
+     * preprocessor line or an annotation. Only the characters that open those
+     * regions are examined, everything else is skipped one character at a time.
+     *
+     * The returned array starts with 0 and ends with the input length.
+     */
+    public int[] findBoundaries(CharSequence code, int chunkSize) {
+        int length = code.length();
+        int[] boundaries = new int[length / chunkSize + 2];
+        int count = 0;
+        boundaries[count++] = 0;
+
+        int target = chunkSize;
+        int pos = 0;
+        boolean lineStart = true;
+        int unterminated = Integer.MAX_VALUE;
+        while (pos < length) {
+            char c = code.charAt(pos);
+            if (c == '"') {
+                int end = pos > unterminated ? -1 : scanString(code, pos, length);
+                if (end < 0) {
+                    unterminated = Math.min(unterminated, pos);
+                }
+                pos = end < 0 ? pos + 1 : end;
+            } else if (c == '\'') {
+                boolean literal = pos + 2 < length && code.charAt(pos + 2) == '\''
+                        && !isLineTerminator(code.charAt(pos + 1));
+                pos += literal ? 3 : 1;
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '/') {
+                pos = skipLineComment(code, pos + 2, length);
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '*') {
+                pos = skipBlockComment(code, pos + 2, length);
+            } else if (skipDirectives && c == '#' && lineStart) {
+                pos = skipDirective(code, pos + 1, length);
+            } else if (skipAnnotations && c == '@') {
+                pos = skipAnnotation(code, pos, length, true);
+            } else {
+                if (pos >= target && (c == '\n' || c == ' ' || c == '\t' || c == '\r')) {
+                    boundaries[count++] = pos;
+                    target = pos + chunkSize;
+                }
+                if (isLineTerminator(c)) {
+                    lineStart = true;
+                } else if (!isBlank(c)) {
+                    lineStart = false;
+                }
+                pos++;
+                continue;
+            }
+            lineStart = false;
+        }
+
+        boundaries[count++] = length;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Returns true if only blanks separate pos from the start of its line.
+     * startsLine tells whether index 0 of code is itself the start of a line,
+     * which is not the case for a window cut out of a larger input.
+     */
+    public static boolean isLineStart(CharSequence code, int pos, boolean startsLine) {
+        int i = pos - 1;
+        while (i >= 0 && isBlank(code.charAt(i))) {
+            i--;
+        }
+        return i < 0 ? startsLine : isLineTerminator(code.charAt(i));
+    }
+
+    public TokenTable getTable() {
+        return table;
+    }
+
+    /**
+     * Lexes code[pos, length) into tokens and returns the position where it
+     * stopped. When complete is false more input follows length, so a token or
+     * comment that runs into length is left unconsumed for the next call.
+     * lineStart tells whether pos is at the start of a line, which decides
+     * whether a '#' opens a preprocessor line.
+     */
+    public int lex(CharSequence code, int pos, int length, boolean complete, boolean lineStart, TokenBuffer tokens) {
+        AsciiText text = code instanceof AsciiText ? (AsciiText) code : null;
+        // Position of the first string that is never closed
+        int unterminated = Integer.MAX_VALUE;
+        while (pos < length) {
+            char c = code.charAt(pos);
+
+            if (c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f') {
+                int end = text != null ? byteScanner.skipWhitespace(text, pos + 1, length)
+                        : skipWhitespace(code, pos + 1, length);
+                // Only the tail of the run after its last line terminator matters
+                int last = end - 1;
+                while (last > pos && isBlank(code.charAt(last))) {
+                    last--;
+                }
+                if (isLineTerminator(code.charAt(last))) {
+                    lineStart = true;
+                }
+                pos = end;
+                continue;
+            } else if (isIdentifierStart(c)) {
+                int end = text != null ? byteScanner.skipIdentifier(text, pos + 1, length)
+                        : skipIdentifier(code, pos + 1, length);
+                if (end == length && !complete) {
+                    return pos;
+                }
+                Token keyword = table.keyword(code, pos, end);
+                tokens.add(keyword != null ? Token.Type.KEYWORD : Token.Type.IDENTIFIER, pos, end);
+                pos = end;
+            } else if (isDigit(c)) {
+                int end = text != null ? byteScanner.skipDigits(text, pos + 1, length)
+                        : skipDigits(code, pos + 1, length);
+                if (end == length && !complete) {
+                    return pos;
+                }
+                tokens.add(Token.Type.LITERAL, pos, end);
+                pos = end;
+            } else if (c == '"') {
+                int end = pos > unterminated ? -1 : scanString(code, pos, length);
+                if (end < 0 && !complete) {
+                    return pos;
+                }
+                if (end < 0) {
+                    // Unterminated string, the quote itself is not a token
+                    unterminated = Math.min(unterminated, pos);
+                    pos++;
+                } else {
+                    tokens.add(Token.Type.LITERAL, pos, end);
+                    pos = end;
+                }
+            } else if (c == '\'') {
+                if (pos + 2 >= length && !complete) {
+                    return pos;
+                }
+                if (pos + 2 < length && code.charAt(pos + 2) == '\'' && !isLineTerminator(code.charAt(pos + 1))) {
+                    tokens.add(Token.Type.LITERAL, pos, pos + 3);
+                    pos += 3;
+                } else {
+                    pos++;
+                }
+            } else if (c == '/' && pos + 1 >= length && !complete) {
+                return pos;
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '/') {
+                int end = skipLineComment(code, pos + 2, length);
+                if (end == length && !complete) {
+                    return pos;
+                }
+                pos = end;
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '*') {
+                int end = skipBlockComment(code, pos + 2, length);
+                if (end == length && !complete) {
+                    return pos;
+                }
+                pos = end;
+            } else if (skipDirectives && c == '#' && lineStart) {
+                int end = skipDirective(code, pos + 1, length);
+                if (end == length && !complete) {
+                    return pos;
+                }
+                pos = end;
+            } else if (skipAnnotations && c == '@') {
+                int end = skipAnnotation(code, pos, length, complete);
+                if (end < 0) {
+                    return pos;
+                }
+                pos = end;
+            } else if (table.startsSymbol(c)) {
+                if (pos + table.getMaxSymbolLength() > length && !complete) {
+                    return pos;
+                }
+                Token symbol = table.symbol(code, pos, length);
+                if (symbol != null) {
+                    int end = pos + symbol.getValue().length();
+                    tokens.add(symbol.getType(), pos, end);
+                    pos = end;
+                } else {
+                    pos++;
+                }
+            } else {
+                // Other line terminators and characters no token starts with
+                if (isLineTerminator(c)) {
+                    lineStart = true;
+                } else if (!isBlank(c)) {
+                    lineStart = false;
+                }
+                pos++;
+                continue;
+            }
+            lineStart = false;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Returns the index just past the closing quote, or -1 if the string never
+     * ends. If the string from pos never ends, neither does one opening at any
+     * later quote q: the scan from pos passed q as an escaped character, so it
+     * is at a character boundary right after q, exactly where the scan from q
+     * starts, and from there both see the same characters.
+     */
+    private int scanString(CharSequence code, int pos, int length) {
+        int i = pos + 1;
+        while (i < length) {
+            char c = code.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c == '\\' && i + 1 < length && !isLineTerminator(code.charAt(i + 1))) {
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private int skipLineComment(CharSequence code, int pos, int length) {
+        while (pos < length && !isLineTerminator(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int skipBlockComment(CharSequence code, int pos, int length) {
+        while (pos + 1 < length) {
+            if (code.charAt(pos) == '*' && code.charAt(pos + 1) == '/') {
+                return pos + 2;
+            }
+            pos++;
+        }
+        return length;
+    }
+
+    /**
+     * Skips a preprocessor line starting just after the '#'. Returns the index
+     * of the line terminator that ends it, or length. Backslash continuations
+     * and block comments extend the line, and strings or character literals
+     * in it may not end it early.
+     */
+    private int skipDirective(CharSequence code, int pos, int length) {
+        while (pos < length) {
+            char c = code.charAt(pos);
+            if (isLineTerminator(c)) {
+                return pos;
+            }
+            char next = pos + 1 < length ? code.charAt(pos + 1) : 0;
+            if (c == '\\' && isLineTerminator(next)) {
+                pos += 2;
+                if (next == '\r' && pos < length && code.charAt(pos) == '\n') {
+                    pos++;
+                }
+            } else if (c == '/' && next == '*') {
+                pos = skipBlockComment(code, pos + 2, length);
+            } else if (c == '/' && next == '/') {
+                return skipLineComment(code, pos + 2, length);
+            } else if (c == '"' || c == '\'') {
+                pos++;
+                while (pos < length && code.charAt(pos) != c && !isLineTerminator(code.charAt(pos))) {
+                    pos += code.charAt(pos) == '\\' && pos + 1 < length ? 2 : 1;
+                }
+                if (pos < length && code.charAt(pos) == c) {
+                    pos++;
+                }
+            } else {
+                pos++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Skips an annotation starting at the '@': its possibly qualified name and,
+     * if one follows, the parenthesized argument list. A lone '@' and
+     * "@interface" only skip the '@'. Returns -1 if the annotation runs into
+     * length and more input may follow; on complete input an argument list
+     * that is never closed runs to length.
+     */
+    private int skipAnnotation(CharSequence code, int pos, int length, boolean complete) {
+        int end = pos + 1;
+        if (end == length && !complete) {
+            return -1;
+        }
+        if (end == length || !isIdentifierStart(code.charAt(end))) {
+            return pos + 1;
+        }
+
+        int nameStart = end;
+        end = skipIdentifier(code, end, length);
+        if (end == length && !complete) {
+            return -1;
+        }
+        if (regionEquals(code, nameStart, end, "interface")) {
+            return pos + 1;
+        }
+        while (end + 1 < length && code.charAt(end) == '.' && isIdentifierStart(code.charAt(end + 1))) {
+            end = skipIdentifier(code, end + 1, length);
+        }
+        if (end + 1 >= length && !complete) {
+            return -1;
+        }
+
+        int open = end;
+        while (open < length && isWhitespace(code.charAt(open))) {
+            open++;
+        }
+        if (open == length && !complete) {
+            return -1;
+        }
+        if (open == length || code.charAt(open) != '(') {
+            return end;
+        }
+
+        int close = skipArguments(code, open, length, complete);
+        if (close < 0) {
+            // Like an unclosed block comment, an unclosed list swallows the rest
+            return complete ? length : -1;
+        }
+        return close;
+    }
+
+    /**
+     * Returns the index just past the parenthesis closing the one at pos, or
+     * -1 if it is not closed before length. Without complete input, a string,
+     * character literal or comment running into length also gives -1, since
+     * its end decides which parenthesis closes the list.
+     */
+    private int skipArguments(CharSequence code, int pos, int length, boolean complete) {
+        int depth = 0;
+        int unterminated = Integer.MAX_VALUE;
+        while (pos < length) {
+            char c = code.charAt(pos);
+            int end;
+            if (c == '(') {
+                depth++;
+                end = pos + 1;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return pos + 1;
+                }
+                end = pos + 1;
+            } else if (c == '"') {
+                end = pos > unterminated ? -1 : scanString(code, pos, length);
+                if (end < 0) {
+                    unterminated = Math.min(unterminated, pos);
+                }
+                end = end < 0 ? (complete ? pos + 1 : length) : end;
+            } else if (c == '\'') {
+                end = pos + 2 < length && code.charAt(pos + 2) == '\'' ? pos + 3 : pos + 1;
+                end = pos + 2 >= length && !complete ? length : end;
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '/') {
+                end = skipLineComment(code, pos + 2, length);
+            } else if (c == '/' && pos + 1 < length && code.charAt(pos + 1) == '*') {
+                end = skipBlockComment(code, pos + 2, length);
+            } else {
+                end = pos + 1;
+            }
+            pos = end;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(CharSequence code, int pos, int length) {
+        char c;
+        while (pos < length && ((c = code.charAt(pos)) == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipDigits(CharSequence code, int pos, int length) {
+        while (pos < length && isDigit(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipIdentifier(CharSequence code, int pos, int length) {
+        while (pos < length && isIdentifierPart(code.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean regionEquals(CharSequence code, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (code.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return isBlank(c) || isLineTerminator(c);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
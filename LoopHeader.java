@@ -0,0 +1,412 @@
+/**
+ * The header of a loop, read from its tokens once by the parser so that the
+ * analyzers can classify the loop without going back to its text.
+ *
+ * It holds the induction variable, the value it starts from, the comparison
+ * that bounds it and the way it is updated. The comparison is turned around
+ * when the variable is on its right, so "n > i" is read as "i < n". A part
+ * that is missing, or that could not be made out, is null.
+ *
+ * Only the first declarator of the initialization, the first comparison of
+ * the condition outside parentheses and the update of the induction variable
+ * are read. The lexers emit "<=" as "<" "=" and "++" as "+" "+", so operators
+ * are recognized from their pieces.
+ */
+public class LoopHeader {
+
+    public enum Update {
+        INCREMENT,
+        DECREMENT,
+        MULTIPLY,
+        DIVIDE,
+        OTHER
+    }
+
+    private final String variable;
+    private final Operand initialValue;
+    private final Operand counter;
+    private final String comparison;
+    private final Operand bound;
+    private final Update update;
+    private final Operand step;
+
+    public LoopHeader(String variable, Operand initialValue, Operand counter, String comparison, Operand bound,
+            Update update, Operand step) {
+        this.variable = variable;
+        this.initialValue = initialValue;
+        this.counter = counter;
+        this.comparison = comparison;
+        this.bound = bound;
+        this.update = update;
+        this.step = step;
+    }
+
+    /**
+     * Reads the header from the token ranges [start, end) of its
+     * initialization, condition and update, given as six indexes in that
+     * order. A while loop has empty initialization and update ranges.
+     */
+    public static LoopHeader read(TokenSource tokens, int[] sections) {
+        String variable = null;
+        Operand initialValue = null;
+
+        // The variable is the name just before the first "="
+        int assign = find(tokens, sections[0], sections[1], "=");
+        if (assign > sections[0] && tokens.type(assign - 1) == Token.Type.IDENTIFIER) {
+            variable = tokens.value(assign - 1);
+            int end = find(tokens, assign + 1, sections[1], ",");
+            initialValue = Operand.read(tokens, assign + 1, end < 0 ? sections[1] : end);
+        }
+
+        Operand counter = null;
+        String comparison = null;
+        Operand bound = null;
+        int start = sections[2];
+        int depth = 0;
+        for (int index = start; index < sections[3] && comparison == null; index++) {
+            if (tokens.is(index, "(") || tokens.is(index, "[")) {
+                depth++;
+            } else if (tokens.is(index, ")") || tokens.is(index, "]")) {
+                depth--;
+            } else if (depth == 0 && (tokens.is(index, "&&") || tokens.is(index, "||"))) {
+                start = index + 1;
+            } else if (depth == 0) {
+                int length = comparisonLength(tokens, index, sections[3]);
+                if (length > 0) {
+                    comparison = join(tokens, index, index + length);
+                    counter = Operand.read(tokens, start, index);
+                    int end = index + length;
+                    while (end < sections[3] && !(tokens.is(end, "&&") || tokens.is(end, "||"))) {
+                        end++;
+                    }
+                    bound = Operand.read(tokens, index + length, end);
+                }
+            }
+        }
+
+        if (comparison != null && isCounterOnRight(counter, bound, variable)) {
+            Operand swapped = counter;
+            counter = bound;
+            bound = swapped;
+            comparison = flip(comparison);
+        }
+        if (variable == null && counter != null && counter.getKind() == Operand.Kind.VARIABLE) {
+            variable = counter.getName();
+        }
+
+        // Of several updates separated by ",", the one of the variable
+        Update update = null;
+        Operand step = null;
+        int[] stepRange = new int[2];
+        int partStart = sections[4];
+        while (partStart < sections[5]) {
+            int comma = find(tokens, partStart, sections[5], ",");
+            int partEnd = comma < 0 ? sections[5] : comma;
+            String updated = updatedVariable(tokens, partStart, partEnd);
+            if (update == null || updated != null && updated.equals(variable)) {
+                update = readUpdate(tokens, partStart, partEnd, stepRange);
+                step = update == Update.OTHER ? null : stepRange[0] == stepRange[1]
+                        ? new Operand(Operand.Kind.LITERAL, "1", null) : Operand.read(tokens, stepRange[0], stepRange[1]);
+            }
+            if (updated != null && updated.equals(variable)) {
+                break;
+            }
+            partStart = partEnd + 1;
+        }
+
+        return new LoopHeader(variable, initialValue, counter, comparison, bound, update, step);
+    }
+
+    // The variable is on the right if it is named there, or if a constant is on the left
+    private static boolean isCounterOnRight(Operand counter, Operand bound, String variable) {
+        if (bound == null || bound.getKind() != Operand.Kind.VARIABLE) {
+            return false;
+        }
+        if (variable != null) {
+            return bound.getName().equals(variable) && (counter == null || !variable.equals(counter.getName()));
+        }
+        return counter != null && counter.isConstant();
+    }
+
+    private static String flip(String comparison) {
+        switch (comparison) {
+            case "<":
+                return ">";
+            case ">":
+                return "<";
+            case "<=":
+                return ">=";
+            case ">=":
+                return "<=";
+            default:
+                return comparison;
+        }
+    }
+
+    // Returns how many tokens the comparison operator at index takes, or 0 if there is none
+    private static int comparisonLength(TokenSource tokens, int index, int end) {
+        boolean followedByEquals = index + 1 < end && tokens.is(index + 1, "=");
+        if (tokens.is(index, "<") || tokens.is(index, ">")) {
+            if (index + 1 < end && (tokens.is(index + 1, "<") || tokens.is(index + 1, ">"))) {
+                return 0; // A shift
+            }
+            return followedByEquals ? 2 : 1;
+        }
+        if (tokens.is(index, "<=") || tokens.is(index, ">=") || tokens.is(index, "!=") || tokens.is(index, "==")) {
+            return 1;
+        }
+        if ((tokens.is(index, "!") || tokens.is(index, "=")) && followedByEquals) {
+            return 2;
+        }
+        return 0;
+    }
+
+    // The name an update part assigns to, increments or decrements
+    private static String updatedVariable(TokenSource tokens, int start, int end) {
+        for (int index = start; index < end; index++) {
+            if (tokens.type(index) == Token.Type.IDENTIFIER) {
+                return tokens.value(index);
+            }
+            if (!tokens.is(index, "+") && !tokens.is(index, "-") && !tokens.is(index, "++") &&
+                    !tokens.is(index, "--")) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Classifies the update in [start, end) and stores the token range of its
+     * step in step[0] and step[1]. The range is empty for "++" and "--".
+     */
+    private static Update readUpdate(TokenSource tokens, int start, int end, int[] step) {
+        step[0] = end;
+        step[1] = end;
+        int length = end - start;
+        if (length == 0) {
+            return Update.OTHER;
+        }
+        boolean prefix = tokens.type(end - 1) == Token.Type.IDENTIFIER;
+        if ((length == 2 || length == 3) && tokens.type(prefix ? end - 1 : start) == Token.Type.IDENTIFIER) {
+            // i++, ++i, i--, --i, with "++" as one token or two
+            String operator = prefix ? join(tokens, start, end - 1) : join(tokens, start + 1, end);
+            if (operator.equals("++")) {
+                return Update.INCREMENT;
+            }
+            if (operator.equals("--")) {
+                return Update.DECREMENT;
+            }
+        }
+        if (length < 3 || tokens.type(start) != Token.Type.IDENTIFIER) {
+            return Update.OTHER;
+        }
+
+        // i += 2, with "+=" as one token or two
+        Update update = arithmetic(tokens.value(start + 1));
+        if (update != null && tokens.is(start + 2, "=")) {
+            step[0] = start + 3;
+            return update;
+        }
+        String operator = tokens.value(start + 1);
+        if (operator.length() == 2 && operator.endsWith("=") && arithmetic(operator.substring(0, 1)) != null) {
+            step[0] = start + 2;
+            return arithmetic(operator.substring(0, 1));
+        }
+
+        // i = i * 2, or i = 2 * i when the operator commutes
+        if (tokens.is(start + 1, "=") && length >= 5) {
+            String variable = tokens.value(start);
+            update = arithmetic(tokens.value(start + 3));
+            if (tokens.is(start + 2, variable) && update != null) {
+                step[0] = start + 4;
+                return update;
+            }
+            update = arithmetic(tokens.value(end - 2));
+            if (tokens.is(end - 1, variable) && (update == Update.INCREMENT || update == Update.MULTIPLY)) {
+                step[0] = start + 2;
+                step[1] = end - 2;
+                return update;
+            }
+        }
+        return Update.OTHER;
+    }
+
+    private static Update arithmetic(String operator) {
+        switch (operator) {
+            case "+":
+                return Update.INCREMENT;
+            case "-":
+                return Update.DECREMENT;
+            case "*":
+                return Update.MULTIPLY;
+            case "/":
+                return Update.DIVIDE;
+            default:
+                return null;
+        }
+    }
+
+    // Returns the first token equal to value outside brackets in [start, end), or -1
+    private static int find(TokenSource tokens, int start, int end, String value) {
+        int depth = 0;
+        for (int index = start; index < end; index++) {
+            if (tokens.is(index, "(") || tokens.is(index, "[") || tokens.is(index, "{")) {
+                depth++;
+            } else if (tokens.is(index, ")") || tokens.is(index, "]") || tokens.is(index, "}")) {
+                depth--;
+            } else if (depth == 0 && tokens.is(index, value)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static String join(TokenSource tokens, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int index = start; index < end; index++) {
+            tokens.appendTo(index, sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the induction variable, taken from the initialization or,
+     * without one, from the condition.
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    public Operand getInitialValue() {
+        return initialValue;
+    }
+
+    /**
+     * Returns the side of the comparison the variable is on.
+     */
+    public Operand getCounter() {
+        return counter;
+    }
+
+    public String getComparison() {
+        return comparison;
+    }
+
+    public Operand getBound() {
+        return bound;
+    }
+
+    public Update getUpdate() {
+        return update;
+    }
+
+    public Operand getStep() {
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return variable + " = " + initialValue + "; " + counter + " " + comparison + " " + bound + "; " + update + " "
+                + step;
+    }
+
+    /**
+     * One side of an initialization, comparison or update, with its tokens
+     * joined without spaces.
+     */
+    public static class Operand {
+
+        public enum Kind {
+            // A number
+            LITERAL,
+            // An all-caps name such as MAX_SIZE, taken to be a preprocessor constant
+            NAMED_CONSTANT,
+            // Any other name
+            VARIABLE,
+            // A name plus or minus a number
+            OFFSET,
+            EXPRESSION
+        }
+
+        private final Kind kind;
+        private final String text;
+        private final String name;
+
+        public Operand(Kind kind, String text, String name) {
+            this.kind = kind;
+            this.text = text;
+            this.name = name;
+        }
+
+        // Returns null for an empty range
+        static Operand read(TokenSource tokens, int start, int end) {
+            if (start >= end) {
+                return null;
+            }
+            String text = join(tokens, start, end);
+            int length = end - start;
+            if (isNumber(tokens, start) && length == 1 ||
+                    length == 2 && tokens.is(start, "-") && isNumber(tokens, start + 1)) {
+                return new Operand(Kind.LITERAL, text, null);
+            }
+            if (tokens.type(start) != Token.Type.IDENTIFIER) {
+                return new Operand(Kind.EXPRESSION, text, null);
+            }
+            String name = tokens.value(start);
+            if (length == 1) {
+                return new Operand(isConstantName(name) ? Kind.NAMED_CONSTANT : Kind.VARIABLE, text, name);
+            }
+            if (length == 3 && (tokens.is(start + 1, "+") || tokens.is(start + 1, "-")) &&
+                    isNumber(tokens, start + 2)) {
+                return new Operand(Kind.OFFSET, text, name);
+            }
+            return new Operand(Kind.EXPRESSION, text, null);
+        }
+
+        private static boolean isNumber(TokenSource tokens, int index) {
+            if (tokens.type(index) != Token.Type.LITERAL) {
+                return false;
+            }
+            char first = tokens.value(index).charAt(0);
+            return first >= '0' && first <= '9' || first == '.';
+        }
+
+        // Upper case letters, digits and "_", starting with a letter, more than one character
+        private static boolean isConstantName(String name) {
+            if (name.length() < 2 || name.charAt(0) < 'A' || name.charAt(0) > 'Z') {
+                return false;
+            }
+            for (int i = 1; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (!(c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns the name of a VARIABLE, NAMED_CONSTANT or OFFSET, or null.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public boolean isConstant() {
+            return kind == Kind.LITERAL || kind == Kind.NAMED_CONSTANT;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -1,5 +1,5 @@
-import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 public class Main {
     public static void main(String[] args) {
@@ -9,25 +9,25 @@ public class Main {
         System.out.println("Welcome to the Complexity Analyzer!");
 
         while (continueAnalyzing) {
-            String code = UserInterface.getInputCode();
+            CharSequence code = UserInterface.getInputCode();
 
-            System.out.println(code);
+            UserInterface.printCode(code);
 
             String language = UserInterface.determineLanguage(code);
 
             if (language.equals("Unsupported")) {
                 System.out.println("Unsupported Language.");
             } else {
-                List<Token> tokens;
+                TokenBuffer tokens;
                 Parser parser;
 
                 if (language.equals("Java")) {
                     JavaTokenizer tokenizer = new JavaTokenizer();
-                    tokens = tokenizer.tokenize(code);
+                    tokens = tokenizer.tokenizeToBuffer(code);
                     parser = new JavaParser();
                 } else if (language.equals("C")) {
                     CTokenizer tokenizer = new CTokenizer();
-                    tokens = tokenizer.tokenize(code);
+                    tokens = tokenizer.tokenizeToBuffer(code);
                     parser = new CParser();
                 } else {
                     System.out.println("Unsupported Language");
@@ -36,7 +36,7 @@ public class Main {
                 }
 
                 if (parser != null && tokens != null) {
-                    ASTNode ast = parser.parse(tokens);
+                    FlatAst ast = parser.parseSkimmed(tokens);
 
                     if (ast == null) {
                         System.out.println("Failed to generate AST.");
@@ -49,6 +49,13 @@ public class Main {
 
                         System.out.println("Time Complexity: " + timeComplexity.toString());
                         System.out.println("Space Complexity: " + spaceComplexity);
+                        Set<AlgorithmPattern> patterns = analyzer.findPatterns();
+                        if (!patterns.isEmpty()) {
+                            System.out.println("Algorithm patterns: " + patterns);
+                        }
+                        if (ast.isTruncated()) {
+                            System.out.println("Note: only part of the code could be parsed.");
+                        }
                     }
                 }
             }
@@ -0,0 +1,340 @@
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facts about the subtree of each node of a {@link FlatAst}, as the
+ * heuristics of {@link TimeComplexityAnalyzer} ask for them: how many
+ * recursive calls it has, whether it has a loop or a call, how deeply its
+ * loops nest, which variables it assigns and which {@link AlgorithmPattern}s
+ * it matches.
+ *
+ * The first question about a node walks its subtree once, bottom up, and
+ * stores the facts of every node in it in arrays indexed by node. Questions
+ * about any of them are then answered without walking again, and a later
+ * walk of an enclosing subtree stops at the nodes already done.
+ *
+ * Walking a subtree parses the bodies of skimmed functions in it, as any walk
+ * of the children does, and the arrays grow with the arena.
+ */
+public class NodeFacts {
+
+    // Flags of a node: its facts are computed, or its children are being computed
+    private static final int COMPUTED = 1;
+    private static final int PENDING = 2;
+    // Flags of a subtree, the node included
+    private static final int HAS_LOOP = 4;
+    private static final int HAS_CALL = 8;
+    private static final int HAS_ASSIGNMENT = 16;
+
+    // What counts as assigning to the name before it, the way the analyzer has always matched it
+    private static final String[] ASSIGNMENT_OPERATORS = {"=", "++", "--", "+=", "-=", "*=", "/="};
+    private static final String[] NO_NAMES = new String[0];
+
+    private static final PatternMatcher MATCHER = PatternMatcher.ALGORITHMS;
+
+    private final FlatAst ast;
+    private int[] flags;
+    private int[] recursiveCalls;
+    private int[] loopDepths;
+    // Names assigned in the value of the node itself
+    private String[][] assignedNames;
+    // The bits of the pattern atoms found in each subtree, MATCHER.words() longs per node
+    private final int words = MATCHER.words();
+    private long[] atoms;
+    // How often a name ending in each suffix is assigned in a subtree, kept for the nodes asked about
+    private final Map<Integer, Map<String, Integer>> assignmentCounts = new HashMap<>();
+    private final IntStack stack = new IntStack();
+
+    public NodeFacts(FlatAst ast) {
+        this.ast = ast;
+        int capacity = Math.max(ast.size(), 16);
+        flags = new int[capacity];
+        recursiveCalls = new int[capacity];
+        loopDepths = new int[capacity];
+        assignedNames = new String[capacity][];
+        atoms = new long[capacity * words];
+    }
+
+    /**
+     * Returns the number of recursive calls in the subtree of node, counting
+     * node itself if it is one.
+     */
+    public int recursiveCalls(int node) {
+        compute(node);
+        return recursiveCalls[node];
+    }
+
+    public boolean containsLoop(int node) {
+        compute(node);
+        return (flags[node] & HAS_LOOP) != 0;
+    }
+
+    /**
+     * Returns true if the subtree of node has a call to a function other than
+     * the one it is in.
+     */
+    public boolean containsCall(int node) {
+        compute(node);
+        return (flags[node] & HAS_CALL) != 0;
+    }
+
+    /**
+     * Returns the largest number of loops nested in one another in the
+     * subtree of node, counting node itself if it is a loop.
+     */
+    public int loopDepth(int node) {
+        compute(node);
+        return loopDepths[node];
+    }
+
+    /**
+     * Returns true if node is of the kind the rule of pattern applies to and
+     * its subtree meets the condition of the rule.
+     */
+    public boolean matches(int node, AlgorithmPattern pattern) {
+        PatternRule rule = pattern.getRule();
+        if (!inScope(node, rule.getScope())) {
+            return false;
+        }
+        compute(node);
+        return rule.getCondition().test(this, ast, node);
+    }
+
+    /**
+     * Returns every pattern that some node of the tree matches. The whole
+     * tree is walked, skimmed function bodies included.
+     */
+    public Set<AlgorithmPattern> patterns() {
+        Set<AlgorithmPattern> found = EnumSet.noneOf(AlgorithmPattern.class);
+        if (ast.root() == FlatAst.NONE) {
+            return found;
+        }
+        compute(ast.root());
+        for (int node = 0; node < ast.size(); node++) {
+            for (AlgorithmPattern pattern : AlgorithmPattern.values()) {
+                if (!found.contains(pattern) && matches(node, pattern)) {
+                    found.add(pattern);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Whether the pattern atom with the given bit is found in the subtree of node
+    boolean hasAtom(int node, int bit) {
+        return (atoms[node * words + (bit >> 6)] & (1L << bit)) != 0;
+    }
+
+    private boolean inScope(int node, PatternRule.Scope scope) {
+        switch (ast.type(node)) {
+            case FUNCTION_DECLARATION:
+            case FUNCTION_DEFINITION:
+                return scope == PatternRule.Scope.FUNCTION;
+            case LOOP:
+            case FOR_LOOP:
+            case WHILE_LOOP:
+            case DO_WHILE_LOOP:
+                return scope == PatternRule.Scope.LOOP;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if a value in the subtree of node, outside the subtree of
+     * excluded, assigns to variable: "variable=", "variable++", "variable+="
+     * and so on, with whitespace ignored. As ever, a longer name that ends in
+     * variable counts too. The variable must be a name, of letters, digits
+     * and underscores, and excluded must be in the subtree of node or be
+     * {@link FlatAst#NONE}.
+     */
+    public boolean assigns(int node, String variable, int excluded) {
+        if (node == excluded) {
+            return false;
+        }
+        for (int i = 0; i < variable.length(); i++) {
+            if (!isNamePart(variable.charAt(i))) {
+                throw new IllegalArgumentException("Not a variable name: " + variable);
+            }
+        }
+        int count = assignments(node, variable);
+        if (excluded != FlatAst.NONE) {
+            count -= assignments(excluded, variable);
+        }
+        return count > 0;
+    }
+
+    // Counts the assignments in the subtree of node to a name that ends in variable
+    private int assignments(int node, String variable) {
+        return assignmentCounts(node).getOrDefault(variable, 0);
+    }
+
+    private Map<String, Integer> assignmentCounts(int node) {
+        Map<String, Integer> counts = assignmentCounts.get(node);
+        if (counts != null) {
+            return counts;
+        }
+        compute(node);
+        counts = new HashMap<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            for (String name : assignedNames[current]) {
+                // Under every suffix, so that a variable is looked up rather than matched against each name
+                for (int start = 0; start < name.length(); start++) {
+                    counts.merge(name.substring(start), 1, Integer::sum);
+                }
+            }
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                // Subtrees without assignments are skipped whole
+                if ((flags[child] & HAS_ASSIGNMENT) != 0) {
+                    stack.push(child);
+                }
+            }
+        }
+        assignmentCounts.put(node, counts);
+        return counts;
+    }
+
+    /**
+     * Computes the facts of every node in the subtree of top that does not
+     * have them yet, children before parents, with an explicit stack so
+     * that deep trees do not overflow the call stack.
+     */
+    private void compute(int top) {
+        ensureCapacity();
+        if ((flags[top] & COMPUTED) != 0) {
+            return;
+        }
+        stack.push(top);
+        while (!stack.isEmpty()) {
+            int node = stack.peek();
+            if ((flags[node] & PENDING) == 0) {
+                flags[node] |= PENDING;
+                // Reading the children may parse a skimmed body into new nodes
+                int child = ast.firstChild(node);
+                ensureCapacity();
+                for (; child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    if ((flags[child] & COMPUTED) == 0) {
+                        stack.push(child);
+                    }
+                }
+                continue;
+            }
+            stack.pop();
+            combine(node);
+        }
+    }
+
+    // Sets the facts of node from its own type and value and the facts of its children
+    private void combine(int node) {
+        int nodeFlags = COMPUTED;
+        int calls = 0;
+        int depth = 0;
+        int offset = node * words;
+        for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+            nodeFlags |= flags[child] & (HAS_LOOP | HAS_CALL | HAS_ASSIGNMENT);
+            calls += recursiveCalls[child];
+            depth = Math.max(depth, loopDepths[child]);
+            for (int word = 0; word < words; word++) {
+                atoms[offset + word] |= atoms[child * words + word];
+            }
+        }
+
+        switch (ast.type(node)) {
+            case LOOP:
+            case FOR_LOOP:
+            case WHILE_LOOP:
+            case DO_WHILE_LOOP:
+                nodeFlags |= HAS_LOOP;
+                depth++;
+                break;
+            case FUNCTION_CALL:
+                nodeFlags |= HAS_CALL;
+                break;
+            case RECURSIVE_CALL:
+                calls++;
+                break;
+            default:
+                break;
+        }
+
+        String value = ast.value(node);
+        if (value != null && !value.isEmpty()) {
+            MATCHER.match(value, atoms, offset);
+        }
+        String[] names = assignedNames(value);
+        if (names.length > 0) {
+            nodeFlags |= HAS_ASSIGNMENT;
+        }
+        assignedNames[node] = names;
+        flags[node] = nodeFlags;
+        recursiveCalls[node] = calls;
+        loopDepths[node] = depth;
+    }
+
+    /**
+     * Returns the name right before each assignment operator in value, once
+     * whitespace is removed: the longest run of name characters there, so
+     * that every variable the value assigns to is a suffix of one of them.
+     */
+    private static String[] assignedNames(String value) {
+        if (value == null || value.isEmpty()) {
+            return NO_NAMES;
+        }
+        String code = stripWhitespace(value);
+        String[] names = NO_NAMES;
+        for (int i = 1; i < code.length(); i++) {
+            if (!isNamePart(code.charAt(i - 1)) || !startsWithAssignment(code, i)) {
+                continue;
+            }
+            int start = i - 1;
+            while (start > 0 && isNamePart(code.charAt(start - 1))) {
+                start--;
+            }
+            names = Arrays.copyOf(names, names.length + 1);
+            names[names.length - 1] = code.substring(start, i);
+        }
+        return names;
+    }
+
+    private static boolean startsWithAssignment(String code, int index) {
+        for (String operator : ASSIGNMENT_OPERATORS) {
+            if (code.startsWith(operator, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The same characters as the \s of a regular expression
+    private static String stripWhitespace(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNamePart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private void ensureCapacity() {
+        if (flags.length >= ast.size()) {
+            return;
+        }
+        int capacity = Math.max(ast.size(), flags.length + (flags.length >> 1));
+        flags = Arrays.copyOf(flags, capacity);
+        recursiveCalls = Arrays.copyOf(recursiveCalls, capacity);
+        loopDepths = Arrays.copyOf(loopDepths, capacity);
+        assignedNames = Arrays.copyOf(assignedNames, capacity);
+        atoms = Arrays.copyOf(atoms, capacity * words);
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the work of a single parse: how many tokens from the start of
+ * the file it may read, and how long it may take. A parser that runs out of
+ * either stops where it is, closes the statements it has open and returns
+ * the tree built so far, marked {@link FlatAst#isTruncated truncated}.
+ *
+ * A batch run sets one on its parsers so that a malformed or enormous file
+ * costs a bounded slice of time instead of holding up the rest.
+ */
+public class ParseBudget {
+
+    public static final ParseBudget UNLIMITED = new ParseBudget(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxTokens;
+    private final long maxNanos;
+
+    /**
+     * Creates a budget of maxTokens tokens and maxMillis milliseconds, either
+     * of which may be the largest value of its type for no limit.
+     */
+    public ParseBudget(int maxTokens, long maxMillis) {
+        if (maxTokens <= 0 || maxMillis <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + maxTokens + " tokens, " + maxMillis + " ms");
+        }
+        this.maxTokens = maxTokens;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns true if a parse that started at the given {@link System#nanoTime}
+     * has run out of time.
+     */
+    public boolean isExpired(long started) {
+        return maxNanos != Long.MAX_VALUE && System.nanoTime() - started > maxNanos;
+    }
+}
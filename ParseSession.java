@@ -0,0 +1,60 @@
+/**
+ * A lexer, a parser and a token buffer for one language, reused from one
+ * file to the next. A session is used by one thread at a time; after a
+ * parse, or a call to {@link #reset}, it holds nothing of the file it parsed
+ * but the capacity of its buffers.
+ *
+ * The trees it returns do not refer to the session, so they stay valid while
+ * the session goes on to other files. Each parse is held to the session's
+ * {@link ParseBudget}.
+ */
+public class ParseSession {
+
+    private final String language;
+    private final Lexer lexer;
+    private final Parser parser;
+    private final TokenBuffer tokens;
+
+    /**
+     * Creates a session for {@link LanguageDetector#JAVA} or
+     * {@link LanguageDetector#C}.
+     */
+    public ParseSession(String language) {
+        this(language, ParseBudget.UNLIMITED);
+    }
+
+    public ParseSession(String language, ParseBudget budget) {
+        if (language.equals(LanguageDetector.JAVA)) {
+            lexer = new JavaTokenizer().getLexer();
+            parser = new JavaParser();
+        } else if (language.equals(LanguageDetector.C)) {
+            lexer = new CTokenizer().getLexer();
+            parser = new CParser();
+        } else {
+            throw new IllegalArgumentException("Unsupported language: " + language);
+        }
+        parser.setBudget(budget);
+        this.language = language;
+        this.tokens = new TokenBuffer("", lexer.getTable());
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public FlatAst parse(CharSequence code) {
+        try {
+            return parser.parseFlat(lexer.lex(code, tokens));
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Drops the source and tokens of the last file, keeping the buffers.
+     */
+    public void reset() {
+        tokens.reset("");
+        parser.reset();
+    }
+}
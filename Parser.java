@@ -1,5 +1,66 @@
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public interface Parser {
-    ASTNode parse(List<Token> tokens);
+    /**
+     * Parses the tokens into a {@link FlatAst}. A parser can be used for any
+     * number of parses, one at a time; each starts from a clean state.
+     */
+    FlatAst parseFlat(TokenSource tokens);
+
+    /**
+     * Clears any state left by a parse, such as one that threw, keeping only
+     * buffers that are reused by the next one.
+     */
+    void reset();
+
+    /**
+     * Sets the budget of every parse that follows; by default it is
+     * {@link ParseBudget#UNLIMITED}. A parse that runs out of it returns the
+     * tree built so far, marked {@link FlatAst#isTruncated truncated}.
+     */
+    void setBudget(ParseBudget budget);
+
+    /**
+     * Parses the tokens into the same {@link FlatAst} as {@link #parseFlat},
+     * splitting the work between functions and parsing them on the pool.
+     */
+    FlatAst parseParallel(TokenBuffer tokens, ForkJoinPool pool);
+
+    default FlatAst parseParallel(TokenBuffer tokens) {
+        return parseParallel(tokens, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the tokens into a {@link FlatAst} whose simple functions are
+     * skimmed, with their bodies parsed only when first read.
+     */
+    FlatAst parseSkimmed(TokenBuffer tokens);
+
+    /**
+     * Parses the tokens into an {@link ASTNode} tree, materialized from the
+     * flat form.
+     */
+    default ASTNode parse(TokenSource tokens) {
+        return parseFlat(tokens).toTree();
+    }
+
+    default ASTNode parse(List<Token> tokens) {
+        return parse(TokenBuffer.of(tokens));
+    }
+
+    /**
+     * Parses a lazily produced token stream, holding only a sliding window of it.
+     */
+    default ASTNode parse(Iterator<Token> tokens) {
+        return parse(new TokenWindow(tokens));
+    }
+
+    /**
+     * Like {@link #parse(Iterator)}, without materializing an object tree.
+     */
+    default FlatAst parseFlat(Iterator<Token> tokens) {
+        return parseFlat(new TokenWindow(tokens));
+    }
 }
@@ -0,0 +1,213 @@
+import java.lang.ref.Reference;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Measures how parse time grows with the number of function calls per
+ * statement. The number of statements is fixed and only the call density
+ * changes, so time per call should stay flat if parsing is linear.
+ *
+ * It also compares the heap retained by a {@link FlatAst} with that of the
+ * same tree materialized as {@link ASTNode} objects, and the time of a
+ * sequential parse with that of {@link Parser#parseParallel} on the common
+ * pool. Last, it compares a full parse of getters and setters with
+ * {@link Parser#parseSkimmed}, which skips their bodies.
+ *
+ * It starts with the heap retained by the tokens and tree of two inputs,
+ * one ten times the other, kept on the heap and in {@link Storage#offHeap()}.
+ * Usage: java ParserBenchmark [statements]
+ */
+public class ParserBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int[] CALLS_PER_STATEMENT = {1, 4, 16, 64, 256};
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        CTokenizer cTokenizer = new CTokenizer();
+        JavaTokenizer javaTokenizer = new JavaTokenizer();
+
+        // Measured first, while the heap holds nothing from the timing runs
+        for (int size : new int[] {statements, statements * 10}) {
+            reportStorage("C", generateC(size, 4), cTokenizer.getLexer(), new CParser());
+            reportStorage("Java", generateJava(size, 4), javaTokenizer.getLexer(), new JavaParser());
+        }
+        reportMemory("C", cTokenizer.tokenizeToBuffer(generateC(statements, 16)), new CParser());
+        reportMemory("Java", javaTokenizer.tokenizeToBuffer(generateJava(statements, 16)), new JavaParser());
+
+        for (int calls : CALLS_PER_STATEMENT) {
+            TokenBuffer tokens = cTokenizer.tokenizeToBuffer(generateC(statements, calls));
+            report("C", calls, statements, () -> new CParser().parseFlat(tokens));
+        }
+        for (int calls : CALLS_PER_STATEMENT) {
+            TokenBuffer tokens = javaTokenizer.tokenizeToBuffer(generateJava(statements, calls));
+            report("Java", calls, statements, () -> new JavaParser().parseFlat(tokens));
+        }
+
+        // A function per ten statements, so the default gives thousands of functions
+        TokenBuffer cFunctions = cTokenizer.tokenizeToBuffer(generateC(statements * 10, 4));
+        reportParallel("C", cFunctions, CParser::new);
+        TokenBuffer javaMethods = javaTokenizer.tokenizeToBuffer(generateJava(statements * 10, 4));
+        reportParallel("Java", javaMethods, JavaParser::new);
+
+        TokenBuffer accessors = javaTokenizer.tokenizeToBuffer(generateAccessors(statements));
+        reportSkimmed("Java", accessors, JavaParser::new);
+    }
+
+    private static void reportSkimmed(String language, TokenBuffer tokens, Supplier<Parser> parsers) {
+        int nodes = parsers.get().parseFlat(tokens).size();
+        int skimmedNodes = parsers.get().parseSkimmed(tokens).size();
+        long full = time(() -> parsers.get().parseFlat(tokens));
+        long skimmed = time(() -> parsers.get().parseSkimmed(tokens));
+        System.out.printf("%-5s accessors  full %d nodes %8.1f ms  skimmed %d nodes %8.1f ms%n", language, nodes,
+                full / 1_000_000.0, skimmedNodes, skimmed / 1_000_000.0);
+    }
+
+    private static void reportParallel(String language, TokenBuffer tokens, Supplier<Parser> parsers) {
+        int nodes = parsers.get().parseFlat(tokens).size();
+        long sequential = time(() -> parsers.get().parseFlat(tokens));
+        long parallel = time(() -> parsers.get().parseParallel(tokens));
+        System.out.printf("%-5s %d nodes  sequential %8.1f ms  parallel %8.1f ms  (%.1fx on %d threads)%n", language,
+                nodes, sequential / 1_000_000.0, parallel / 1_000_000.0, (double) sequential / parallel,
+                ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * Prints the heap retained by the parsed tree in both forms. The tree
+     * shares its Strings with the arena, so only its nodes are counted.
+     */
+    private static void reportMemory(String language, TokenBuffer tokens, Parser parser) {
+        // Builds the bracket table up front, so it is not counted as part of the tree
+        tokens.closing(0);
+
+        long before = usedHeap();
+        FlatAst flat = parser.parseFlat(tokens);
+        long flatBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ASTNode tree = flat.toTree();
+        long treeBytes = usedHeap() - before;
+        Reference.reachabilityFence(tree);
+
+        System.out.printf("%-5s %d nodes  FlatAst %6.1f MB  ASTNode %6.1f MB%n", language, flat.size(),
+                flatBytes / (1024.0 * 1024.0), treeBytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Prints the heap retained by the tokens and tree of code in both
+     * storages. Off the heap, only the attributes and bookkeeping remain.
+     */
+    private static void reportStorage(String language, String code, Lexer lexer, Parser parser) {
+        long heapBytes = retainedHeap(code, lexer, parser, Storage.HEAP);
+        try (Storage storage = Storage.offHeap()) {
+            long offHeapBytes = retainedHeap(code, lexer, parser, storage);
+            System.out.printf("%-5s %d chars  tokens and tree on heap %6.1f MB  %s %6.1f MB%n", language,
+                    code.length(), heapBytes / (1024.0 * 1024.0),
+                    storage.isOffHeap() ? "off heap" : "(no foreign module)", offHeapBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    private static long retainedHeap(String code, Lexer lexer, Parser parser, Storage storage) {
+        long before = usedHeap();
+        TokenBuffer tokens = lexer.lex(code, storage);
+        FlatAst ast = parser.parseFlat(tokens);
+        long bytes = usedHeap() - before;
+        Reference.reachabilityFence(tokens);
+        Reference.reachabilityFence(ast);
+        return bytes;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String language, int calls, int statements, Runnable parse) {
+        long best = time(parse);
+        long totalCalls = (long) calls * statements;
+        System.out.printf("%-5s %4d calls/statement  %8.1f ms  %6.1f ns/call%n", language, calls, best / 1_000_000.0,
+                (double) best / totalCalls);
+    }
+
+    // Best of the measured rounds, in nanoseconds
+    private static long time(Runnable parse) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parse.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            parse.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static String generateC(int statements, int calls) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("int helper(int a, int b) {\n    return a + b;\n}\n");
+        for (int i = 0; i < statements; i += 10) {
+            sb.append("int function").append(i).append("(int n) {\n    int x = 0;\n");
+            for (int j = 0; j < 10; j++) {
+                sb.append("    x = ");
+                appendCalls(sb, calls);
+                sb.append(";\n");
+            }
+            sb.append("    return x;\n}\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateJava(int statements, int calls) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public class Generated {\n");
+        for (int i = 0; i < statements; i += 10) {
+            sb.append("    public void method").append(i).append("(int n) {\n        int x = 0;\n");
+            for (int j = 0; j < 10; j++) {
+                sb.append("        x = ");
+                appendCalls(sb, calls);
+                sb.append(";\n");
+            }
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // A getter and a setter per field, as in typical business code
+    static String generateAccessors(int fields) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public class Accessors {\n");
+        for (int i = 0; i < fields; i++) {
+            sb.append("    private int field").append(i).append(";\n")
+                    .append("    public int getField").append(i).append("() {\n")
+                    .append("        return field").append(i).append(";\n    }\n")
+                    .append("    public void setField").append(i).append("(int value) {\n")
+                    .append("        if (value < 0) {\n            value = 0;\n        }\n")
+                    .append("        this.field").append(i).append(" = value;\n    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // Half of the calls are nested inside each other, the rest follow in sequence
+    private static void appendCalls(StringBuilder sb, int calls) {
+        int nested = calls / 2;
+        for (int k = 0; k < nested; k++) {
+            sb.append("helper(n, ");
+        }
+        sb.append("n");
+        for (int k = 0; k < nested; k++) {
+            sb.append(")");
+        }
+        for (int k = nested; k < calls; k++) {
+            sb.append(" + helper(x, n)");
+        }
+    }
+}
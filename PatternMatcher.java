@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rules of every {@link AlgorithmPattern}, compiled once into a single
+ * matcher. Each distinct token pattern and mentioned word is an atom with a
+ * bit of its own; {@link #match} splits a node value into tokens once and
+ * sets the bits of all the atoms found in it. Token patterns are indexed by
+ * their first token, so at each position only the patterns that can start
+ * there are tried.
+ */
+public final class PatternMatcher {
+
+    public static final PatternMatcher ALGORITHMS = new PatternMatcher(AlgorithmPattern.values());
+
+    // Operators the lexer may have split, which patterns treat as one token
+    private static final Set<String> COMPOUND_OPERATORS = Set.of("==", "<=", ">=", "!=", "+=", "-=", "*=", "/=",
+            "%=", "++", "--", "<<", ">>", "&&", "||");
+    private static final String GAP = "..";
+
+    private final int atomCount;
+    // Token patterns by their literal first token, and those that start with a name variable
+    private final Map<String, List<TokenPattern>> byFirstToken = new HashMap<>();
+    private final List<TokenPattern> byName = new ArrayList<>();
+    private final List<PatternRule.Atom> mentions = new ArrayList<>();
+
+    public PatternMatcher(AlgorithmPattern... patterns) {
+        Map<String, Integer> bits = new HashMap<>();
+        for (AlgorithmPattern pattern : patterns) {
+            List<PatternRule.Atom> atoms = new ArrayList<>();
+            pattern.getRule().getCondition().collect(atoms);
+            for (PatternRule.Atom atom : atoms) {
+                Integer bit = bits.get(atom.key());
+                if (bit == null) {
+                    bit = bits.size();
+                    bits.put(atom.key(), bit);
+                    if (atom.kind == PatternRule.Atom.Kind.MENTION) {
+                        mentions.add(atom);
+                    } else {
+                        add(new TokenPattern(atom.text, bit));
+                    }
+                }
+                atom.bit = bit;
+            }
+        }
+        atomCount = bits.size();
+    }
+
+    /**
+     * Returns the number of longs that hold the bits of all atoms.
+     */
+    public int words() {
+        return (atomCount + 63) / 64;
+    }
+
+    /**
+     * Sets in bits, from offset on, the bits of the atoms found in value.
+     */
+    public void match(String value, long[] bits, int offset) {
+        List<String> tokens = split(value);
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            List<TokenPattern> candidates = byFirstToken.get(token);
+            if (candidates != null) {
+                for (TokenPattern pattern : candidates) {
+                    pattern.match(tokens, i, bits, offset);
+                }
+            }
+            if (isName(token)) {
+                for (TokenPattern pattern : byName) {
+                    pattern.match(tokens, i, bits, offset);
+                }
+                if (!mentions.isEmpty()) {
+                    String lower = token.toLowerCase();
+                    for (PatternRule.Atom mention : mentions) {
+                        if (lower.contains(mention.text)) {
+                            set(bits, offset, mention.bit);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(TokenPattern pattern) {
+        if (pattern.variables[0] >= 0) {
+            byName.add(pattern);
+        } else {
+            byFirstToken.computeIfAbsent(pattern.literals[0], t -> new ArrayList<>()).add(pattern);
+        }
+    }
+
+    private static void set(long[] bits, int offset, int bit) {
+        bits[offset + (bit >> 6)] |= 1L << bit;
+    }
+
+    /**
+     * Splits a value into runs of letters, digits and underscores and single
+     * other characters, dropping whitespace, then joins the compound
+     * operators, so that "n / = 2" and "n /= 2" both give n, /=, 2.
+     */
+    static List<String> split(String value) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (isNamePart(c)) {
+                int start = i;
+                while (i < value.length() && isNamePart(value.charAt(i))) {
+                    i++;
+                }
+                tokens.add(value.substring(start, i));
+            } else {
+                String operator = String.valueOf(c);
+                int last = tokens.size() - 1;
+                if (last >= 0 && tokens.get(last).length() == 1 && COMPOUND_OPERATORS.contains(tokens.get(last) + c)) {
+                    tokens.set(last, tokens.get(last) + c);
+                } else {
+                    tokens.add(operator);
+                }
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isName(String token) {
+        return isNamePart(token.charAt(0));
+    }
+
+    private static boolean isNamePart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * A compiled token pattern: per position either a literal, a name
+     * variable given as an index into the bound names, or a gap.
+     */
+    private static final class TokenPattern {
+
+        private final String[] literals;
+        private final int[] variables;
+        private final boolean[] gaps;
+        private final int variableCount;
+        private final int bit;
+
+        TokenPattern(String pattern, int bit) {
+            String[] parts = pattern.trim().split("\\s+");
+            literals = new String[parts.length];
+            variables = new int[parts.length];
+            gaps = new boolean[parts.length];
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < parts.length; i++) {
+                variables[i] = -1;
+                if (parts[i].equals(GAP)) {
+                    if (i == 0 || i == parts.length - 1) {
+                        throw new IllegalArgumentException("A pattern cannot start or end with a gap: " + pattern);
+                    }
+                    gaps[i] = true;
+                } else if (parts[i].startsWith("$")) {
+                    if (!names.contains(parts[i])) {
+                        names.add(parts[i]);
+                    }
+                    variables[i] = names.indexOf(parts[i]);
+                } else {
+                    literals[i] = parts[i];
+                }
+            }
+            this.variableCount = names.size();
+            this.bit = bit;
+        }
+
+        void match(List<String> tokens, int start, long[] bits, int offset) {
+            if (matches(tokens, start, 0, new String[variableCount])) {
+                set(bits, offset, bit);
+            }
+        }
+
+        // Matches the pattern from part on against the tokens from index on
+        private boolean matches(List<String> tokens, int index, int part, String[] bound) {
+            if (part == literals.length) {
+                return true;
+            }
+            if (gaps[part]) {
+                // Any run of tokens up to the end of the statement, shortest first
+                for (int i = index; i < tokens.size(); i++) {
+                    if (matches(tokens, i, part + 1, bound)) {
+                        return true;
+                    }
+                    if (tokens.get(i).equals(";")) {
+                        return false;
+                    }
+                }
+                return false;
+            }
+            if (index == tokens.size()) {
+                return false;
+            }
+            String token = tokens.get(index);
+            int variable = variables[part];
+            if (variable < 0) {
+                return token.equals(literals[part]) && matches(tokens, index + 1, part + 1, bound);
+            }
+            if (!isName(token)) {
+                return false;
+            }
+            if (bound[variable] != null) {
+                return bound[variable].equals(token) && matches(tokens, index + 1, part + 1, bound);
+            }
+            bound[variable] = token;
+            if (matches(tokens, index + 1, part + 1, bound)) {
+                return true;
+            }
+            bound[variable] = null;
+            return false;
+        }
+    }
+}
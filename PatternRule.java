@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recognizer for an {@link AlgorithmPattern}, declared as the kind of node
+ * it applies to and a condition on that node's subtree. Conditions are built
+ * from the static methods here and only say what to look for; the
+ * {@link PatternMatcher} compiled from all rules finds every token pattern
+ * and mentioned word in one pass, which {@link NodeFacts} makes along with
+ * its other facts.
+ *
+ * A token pattern, as given to {@link #code}, is a list of tokens separated
+ * by spaces that must follow one another in the value of a single node:
+ * <ul>
+ * <li>a literal is a name, number or operator, where "+=", "++", "==", "&gt;&gt;"
+ * and the other compound operators count as one token even when the
+ * lexer split them, so "=" only matches a plain assignment;</li>
+ * <li>{@code $x} is any name, and a second {@code $x} the same name again;</li>
+ * <li>{@code ..} is any run of tokens, possibly none, within the statement.</li>
+ * </ul>
+ * For example {@code "$x = $x / 2"} matches n = n / 2 and
+ * {@code "mid = .. + .. / 2"} matches mid = (low + high) / 2.
+ */
+public final class PatternRule {
+
+    public enum Scope {
+        FUNCTION,
+        LOOP
+    }
+
+    private final Scope scope;
+    private final Condition condition;
+
+    private PatternRule(Scope scope, Condition condition) {
+        this.scope = scope;
+        this.condition = condition;
+    }
+
+    public static PatternRule in(Scope scope, Condition condition) {
+        return new PatternRule(scope, condition);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    /**
+     * The value of a node in the subtree matches the token pattern.
+     */
+    public static Condition code(String pattern) {
+        return new Atom(Atom.Kind.CODE, pattern);
+    }
+
+    /**
+     * A name in the subtree contains word, ignoring case: mentions("merge")
+     * holds for mergeSort and merge_sort.
+     */
+    public static Condition mentions(String word) {
+        return new Atom(Atom.Kind.MENTION, word.toLowerCase());
+    }
+
+    /**
+     * The function name or value of the node itself contains word, ignoring case.
+     */
+    public static Condition named(String word) {
+        String lower = word.toLowerCase();
+        return new Condition() {
+            @Override
+            boolean test(NodeFacts facts, FlatAst ast, int node) {
+                return contains(ast.functionName(node), lower) || contains(ast.value(node), lower);
+            }
+        };
+    }
+
+    /**
+     * The subtree has at least count recursive calls.
+     */
+    public static Condition recursiveCalls(int count) {
+        return new Condition() {
+            @Override
+            boolean test(NodeFacts facts, FlatAst ast, int node) {
+                return facts.recursiveCalls(node) >= count;
+            }
+        };
+    }
+
+    /**
+     * The variable is stepped up by one: name++, ++name, name += 1 or name = name + 1.
+     */
+    public static Condition increments(String name) {
+        return any(code(name + " ++"), code("++ " + name), code(name + " += 1"), code(name + " = " + name + " + 1"));
+    }
+
+    /**
+     * The variable is stepped down by one, the same ways as {@link #increments}.
+     */
+    public static Condition decrements(String name) {
+        return any(code(name + " --"), code("-- " + name), code(name + " -= 1"), code(name + " = " + name + " - 1"));
+    }
+
+    public static Condition all(Condition... conditions) {
+        return new Combination(true, conditions);
+    }
+
+    public static Condition any(Condition... conditions) {
+        return new Combination(false, conditions);
+    }
+
+    private static boolean contains(String text, String word) {
+        return text != null && text.toLowerCase().contains(word);
+    }
+
+    /**
+     * A test of a node. The ones that look at the code of the subtree are
+     * {@link Atom}s, answered from the bits NodeFacts keeps for each node.
+     */
+    public abstract static class Condition {
+
+        abstract boolean test(NodeFacts facts, FlatAst ast, int node);
+
+        // Adds the atoms of the condition, for the matcher to give them bits
+        void collect(List<Atom> atoms) {
+        }
+    }
+
+    /**
+     * A token pattern or mentioned word, found by the {@link PatternMatcher}
+     * in the values of a subtree. Atoms with the same kind and text share a
+     * bit.
+     */
+    static final class Atom extends Condition {
+
+        enum Kind {
+            CODE,
+            MENTION
+        }
+
+        final Kind kind;
+        final String text;
+        // Set when the matcher is compiled
+        int bit = -1;
+
+        private Atom(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        String key() {
+            return kind + " " + text;
+        }
+
+        @Override
+        boolean test(NodeFacts facts, FlatAst ast, int node) {
+            return facts.hasAtom(node, bit);
+        }
+
+        @Override
+        void collect(List<Atom> atoms) {
+            atoms.add(this);
+        }
+    }
+
+    private static final class Combination extends Condition {
+
+        private final boolean all;
+        private final List<Condition> conditions = new ArrayList<>();
+
+        Combination(boolean all, Condition... conditions) {
+            this.all = all;
+            this.conditions.addAll(List.of(conditions));
+        }
+
+        @Override
+        boolean test(NodeFacts facts, FlatAst ast, int node) {
+            for (Condition condition : conditions) {
+                if (condition.test(facts, ast, node) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+
+        @Override
+        void collect(List<Atom> atoms) {
+            for (Condition condition : conditions) {
+                condition.collect(atoms);
+            }
+        }
+    }
+}
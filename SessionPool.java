@@ -0,0 +1,61 @@
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * A thread-safe pool of {@link ParseSession}s, per language, so that a
+ * long-running process reuses warmed sessions and their buffers instead of
+ * allocating new ones for every file.
+ *
+ * A session is taken with {@link #acquire} and given back with
+ * {@link #release}, which resets it. The most recently released session is
+ * handed out first, as its buffers are the likeliest to still be cached. At
+ * most maxIdle sessions per language are kept; more are left to the garbage
+ * collector. Every session of the pool parses within the same budget.
+ */
+public class SessionPool {
+
+    private final int maxIdle;
+    private final ParseBudget budget;
+    private final Map<String, BlockingDeque<ParseSession>> idle = new ConcurrentHashMap<>();
+
+    public SessionPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SessionPool(int maxIdle) {
+        this(maxIdle, ParseBudget.UNLIMITED);
+    }
+
+    public SessionPool(int maxIdle, ParseBudget budget) {
+        this.maxIdle = maxIdle;
+        this.budget = budget;
+    }
+
+    public ParseSession acquire(String language) {
+        ParseSession session = sessions(language).pollFirst();
+        return session != null ? session : new ParseSession(language, budget);
+    }
+
+    public void release(ParseSession session) {
+        session.reset();
+        sessions(session.getLanguage()).offerFirst(session);
+    }
+
+    /**
+     * Parses code with a pooled session of the language.
+     */
+    public FlatAst parse(String language, CharSequence code) {
+        ParseSession session = acquire(language);
+        try {
+            return session.parse(code);
+        } finally {
+            release(session);
+        }
+    }
+
+    private BlockingDeque<ParseSession> sessions(String language) {
+        return idle.computeIfAbsent(language, l -> new LinkedBlockingDeque<>(maxIdle));
+    }
+}
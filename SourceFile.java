@@ -0,0 +1,35 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads source files for analysis.
+ *
+ * Files are memory-mapped rather than read onto the heap. Pure ASCII files,
+ * which is nearly all C and Java source, are handed to the lexer as
+ * {@link AsciiText} over the mapping. Anything else is decoded into a String
+ * the same way the file input always was.
+ */
+public class SourceFile {
+
+    private SourceFile() {
+    }
+
+    public static CharSequence read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to analyze: " + path);
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (AsciiText.isAscii(mapped)) {
+                return new AsciiText(mapped);
+            }
+        }
+        return new String(Files.readAllBytes(path));
+    }
+}
@@ -5,135 +5,184 @@ public class SpaceComplexityAnalyzer {
     private boolean isRecursive = false;
     private Set<String> visitedFunctions = new HashSet<>();
     private int maxRecursionDepth = 0;
+    // Set by analyze; nodes are handles into it
+    private FlatAst ast;
+    // The calls between functions, to tell a call that is part of a cycle of calls
+    private CallGraph calls;
 
     public String analyze(ASTNode node) {
-        analyzeNode(node);
+        return analyze(FlatAst.of(node));
+    }
+
+    public String analyze(FlatAst ast) {
+        this.ast = ast;
+        this.calls = new CallGraph(ast);
+        analyzeNode(ast.root());
+        return "Space Complexity: " + getSpaceComplexity();
+    }
+
+    /**
+     * The old traversal: visits the tree by recursion rather than with an
+     * explicit stack, giving what {@link #analyze(FlatAst)} gives. Only
+     * {@link AnalyzerBenchmark} uses it, as the baseline it measures against,
+     * and nesting deep enough overflows the call stack.
+     */
+    String analyzeRecursively(FlatAst ast) {
+        this.ast = ast;
+        this.calls = new CallGraph(ast);
+        analyzeNodeRecursively(ast.root());
         return "Space Complexity: " + getSpaceComplexity();
     }
 
-    private void analyzeNode(ASTNode node) {
-        switch (node.getType()) {
+    /**
+     * Visits the subtree of top, parents before children, with an explicit
+     * stack rather than the call stack, so that no depth of nesting
+     * overflows it. {@link #enter} does what a node itself adds and says
+     * whether to visit its children; {@link #leave} runs once they are done.
+     */
+    private void analyzeNode(int top) {
+        if (!enter(top)) {
+            return;
+        }
+
+        // The nodes whose children are being visited, and the next child of each
+        IntStack nodes = new IntStack();
+        IntStack nextChildren = new IntStack();
+        nodes.push(top);
+        nextChildren.push(ast.firstChild(top));
+        while (!nodes.isEmpty()) {
+            int child = nextChildren.pop();
+            if (child == FlatAst.NONE) {
+                leave(nodes.pop());
+                continue;
+            }
+            nextChildren.push(ast.nextSibling(child));
+            if (enter(child)) {
+                nodes.push(child);
+                nextChildren.push(ast.firstChild(child));
+            }
+        }
+    }
+
+    // The subtree of node visited as analyzeNode does, but on the call stack
+    private void analyzeNodeRecursively(int node) {
+        if (!enter(node)) {
+            return;
+        }
+        for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+            analyzeNodeRecursively(child);
+        }
+        leave(node);
+    }
+
+    // Returns true if the children of node are to be visited
+    private boolean enter(int node) {
+        switch (ast.type(node)) {
             case PROGRAM:
             case TYPE_DECLARATION:
             case CONDITIONAL:
             case EXPRESSION:
-                for (ASTNode child : node.getChildren()) {
-                    analyzeNode(child);
-                }
-                break;
+            case BLOCK:
+            case STATEMENT:
+            case CONDITION:
+            case VARIABLE_DECLARATION:
+            case CLASS_OR_INTERFACE:
+                return true;
             case FUNCTION_DECLARATION:
             case FUNCTION_DEFINITION:
-                handleFunctionDeclaration(node);
-                break;
+                return handleFunctionDeclaration(node);
             case LOOP:
             case FOR_LOOP:
             case WHILE_LOOP:
             case DO_WHILE_LOOP:
-                handleLoop(node);
-                break;
+                return true;
             case ARRAY_DECLARATION:
                 handleArrayDeclaration(node);
-                break;
+                return true;
             case NEW_INSTANCE:
                 handleNewInstance(node);
-                break;
+                return false;
             case RETURN_STATEMENT:
-                handleReturnStatement(node);
-                break;
+                // The returned expression, with the calls and allocations in it
+                return true;
             case FUNCTION_CALL:
                 handleFunctionCall(node);
-                break;
+                return true;
             case RECURSIVE_CALL:
                 handleRecursiveCall(node);
-                break;
+                return true;
             default:
-                break;
+                return false;
         }
     }
 
-    private void handleLoop(ASTNode node) {
-
-        for (ASTNode child : node.getChildren()) {
-            analyzeNode(child);
+    private void leave(int node) {
+        if (ast.isFunction(node)) {
+            // The function body is done, so a call to it below here is no longer recursion
+            String functionName = functionName(node);
+            if (functionName != null) {
+                visitedFunctions.remove(functionName);
+            }
         }
     }
 
-    private void handleArrayDeclaration(ASTNode node) {
-        int dimensions = node.getDimensions().size();
+    private void handleArrayDeclaration(int node) {
+        int dimensions = ast.dimensionCount(node);
 
         if (dimensions == 1) {
             totalSpaceComplexity = totalSpaceComplexity.add(new Complexity("n", 2));
         } else {
             totalSpaceComplexity = totalSpaceComplexity.add(new Complexity("n", dimensions));
         }
-
-        for (ASTNode child : node.getChildren()) {
-            analyzeNode(child);
-        }
     }
 
-    private void handleNewInstance(ASTNode node) {
+    private void handleNewInstance(int node) {
 
         totalSpaceComplexity = totalSpaceComplexity.add(new Complexity("O(n)"));
     }
 
-    private void handleReturnStatement(ASTNode node) {
-        for (ASTNode child : node.getChildren()) {
-            if (child.getType() == ASTNode.Type.EXPRESSION) {
-                analyzeNode(child);
-            }
+    // Returns true if the function body is to be visited
+    private boolean handleFunctionDeclaration(int node) {
+        if (ast.isSkimmed(node) && ast.bodyFlags(node) == 0) {
+            // No calls and nothing that allocates, so the body adds no space
+            return false;
         }
-    }
 
-    private void handleFunctionDeclaration(ASTNode node) {
-        String functionName = node.getFunctionName();
-        if (functionName == null) {
-            functionName = node.getValue();
-        }
+        String functionName = functionName(node);
 
         if (functionName != null) {
             if (visitedFunctions.contains(functionName)) {
                 // Recursive function detected
                 isRecursive = true;
-            } else {
-                visitedFunctions.add(functionName);
-                // Analyze function body
-                for (ASTNode child : node.getChildren()) {
-                    analyzeNode(child);
-                }
-                visitedFunctions.remove(functionName);
-            }
-        } else {
-            // No function name, just analyze children
-            for (ASTNode child : node.getChildren()) {
-                analyzeNode(child);
+                return false;
             }
+            // Analyze function body, forgetting the name again in leave
+            visitedFunctions.add(functionName);
         }
+        return true;
     }
 
-    private void handleFunctionCall(ASTNode node) {
-        String functionName = node.getFunctionName();
-        if (functionName == null) {
-            functionName = node.getValue();
-        }
+    private void handleFunctionCall(int node) {
+        String functionName = functionName(node);
 
         if (functionName != null && visitedFunctions.contains(functionName)) {
             isRecursive = true;
         }
-
-        for (ASTNode child : node.getChildren()) {
-            analyzeNode(child);
+        // A call to a function that can call back the caller, as in mutual recursion
+        if (functionName != null &&
+                calls.inSameComponent(ast.enclosingFunction(node), ast.functionDefinition(functionName))) {
+            isRecursive = true;
         }
     }
 
-    private void handleRecursiveCall(ASTNode node) {
+    private void handleRecursiveCall(int node) {
         // Recursive call detected
         isRecursive = true;
+    }
 
-        // Analyze children
-        for (ASTNode child : node.getChildren()) {
-            analyzeNode(child);
-        }
+    private String functionName(int node) {
+        String functionName = ast.functionName(node);
+        return functionName != null ? functionName : ast.value(node);
     }
 
     private String getSpaceComplexity() {
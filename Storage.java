@@ -0,0 +1,70 @@
+/**
+ * Where a {@link TokenBuffer} and a {@link FlatAst} keep their columns.
+ *
+ * {@link #HEAP}, the default, keeps them in arrays on the heap.
+ * {@link #offHeap()} returns an OffHeapStorage, which keeps them in native
+ * memory, when it was compiled, from the optional sources in incubator/, and
+ * the jdk.incubator.foreign module is present, and falls back to the heap
+ * otherwise. A parser puts the tree in the storage of its
+ * tokens, so closing the storage once a file has been analyzed frees both at
+ * once, and the heap holds little more than the rare attributes no matter
+ * how large the file was.
+ *
+ * <pre>
+ * try (Storage storage = Storage.offHeap()) {
+ *     FlatAst ast = parser.parseFlat(lexer.lex(SourceFile.read(path), storage));
+ *     ...
+ * }
+ * </pre>
+ */
+public class Storage implements AutoCloseable {
+
+    public static final Storage HEAP = new Storage();
+
+    private static final String FOREIGN_MODULE = "jdk.incubator.foreign";
+
+    protected Storage() {
+    }
+
+    /**
+     * Returns a new storage in native memory, or {@link #HEAP} if this
+     * runtime does not have the Foreign Memory API or OffHeapStorage was not
+     * built.
+     */
+    public static Storage offHeap() {
+        if (ModuleLayer.boot().findModule(FOREIGN_MODULE).isPresent()) {
+            try {
+                // Loaded by name so that nothing links against the module when it is missing
+                return (Storage) Class.forName("OffHeapStorage").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the heap
+            }
+        }
+        return HEAP;
+    }
+
+    public boolean isOffHeap() {
+        return false;
+    }
+
+    public IntColumn ints(int capacity) {
+        return new IntColumn(capacity);
+    }
+
+    public ByteColumn bytes(int capacity) {
+        return new ByteColumn(capacity);
+    }
+
+    public StringColumn strings(int capacity) {
+        return new StringColumn(capacity);
+    }
+
+    /**
+     * Frees every column handed out, after which none of them, nor the
+     * tokens and trees that use them, may be read. The heap leaves that to
+     * the garbage collector.
+     */
+    @Override
+    public void close() {
+    }
+}
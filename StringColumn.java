@@ -0,0 +1,41 @@
+import java.util.Arrays;
+
+/**
+ * A column of nullable Strings, such as the node values, kept the same way as
+ * an {@link IntColumn}. The heap column holds the Strings themselves; an
+ * off-heap one holds their characters and makes a new String on every read.
+ */
+public class StringColumn {
+
+    private String[] values;
+
+    public StringColumn(int capacity) {
+        values = new String[capacity];
+    }
+
+    // For subclasses that keep their values elsewhere
+    protected StringColumn() {
+    }
+
+    public String get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, String value) {
+        values[index] = value;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Changes the capacity, keeping the values that still fit.
+     */
+    public void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    public void free() {
+    }
+}
@@ -1,8 +1,19 @@
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 public class TimeComplexityAnalyzer {
 
+    private static final TimeComplexity.ComplexityType[] COMPLEXITY_TYPES = TimeComplexity.ComplexityType.values();
+
     private ASTNode root;
+    // The tree being analyzed; every int node below is a handle into it
+    private FlatAst ast;
+    // Recursive calls, loops, calls, assignments and patterns below each node, computed once
+    private NodeFacts facts;
+    // The calls between functions, and the complexity of each function analyzed, reused at its calls
+    private CallGraph calls;
+    private final Map<Integer, TimeComplexity> summaries = new HashMap<>();
 
     public TimeComplexityAnalyzer() {
         this.root = null;
@@ -20,26 +31,163 @@ public class TimeComplexityAnalyzer {
         if (rootNode == null) {
             throw new IllegalArgumentException("Provided AST node is null.");
         }
-        return analyzeNode(rootNode);
+        return analyze(FlatAst.of(rootNode));
+    }
+
+    public TimeComplexity analyze(FlatAst ast) {
+        return analyze(ast, false);
+    }
+
+    /**
+     * Analyzes the tree as {@link #analyze(FlatAst)} does, with the same
+     * result, but by recursion, one call per level of nesting, the way the
+     * analyzer used to. Kept only for {@link AnalyzerBenchmark} to compare
+     * against; it overflows the call stack on deeply nested code.
+     */
+    TimeComplexity analyzeRecursively(FlatAst ast) {
+        return analyze(ast, true);
+    }
+
+    private TimeComplexity analyze(FlatAst ast, boolean recursively) {
+        if (ast == null || ast.root() == FlatAst.NONE) {
+            throw new IllegalArgumentException("Provided AST node is null.");
+        }
+        this.ast = ast;
+        this.facts = new NodeFacts(ast);
+        this.calls = new CallGraph(ast);
+        this.summaries.clear();
+
+        // Callees first, so that a call finds the summary of the function it calls
+        for (int function : calls.bottomUp()) {
+            if (recursively) {
+                analyzeNodeRecursively(function);
+            } else {
+                analyzeNode(function);
+            }
+        }
+        return recursively ? analyzeNodeRecursively(ast.root()) : analyzeNode(ast.root());
+    }
+
+    /**
+     * Returns the algorithm patterns found anywhere in the tree last analyzed.
+     */
+    public Set<AlgorithmPattern> findPatterns() {
+        if (facts == null) {
+            throw new IllegalStateException("No AST has been analyzed.");
+        }
+        return facts.patterns();
     }
 
-    private TimeComplexity analyzeNode(ASTNode node) {
-        switch (node.getType()) {
+    /**
+     * Analyzes the subtree of top, children before parents, with an explicit
+     * stack rather than the call stack, so that no depth of nesting
+     * overflows it. A node that {@link #analyzeBefore} leaves to its children
+     * is given the largest of their complexities by {@link #analyzeAfter}
+     * once they are all done.
+     */
+    private TimeComplexity analyzeNode(int top) {
+        TimeComplexity complexity = analyzeBefore(top);
+        if (complexity != null) {
+            return complexity;
+        }
+
+        // The nodes whose children are being analyzed, and the next child of each
+        IntStack nodes = new IntStack();
+        IntStack nextChildren = new IntStack();
+        // The largest complexity among the children of the innermost node so far, and those of the others
+        int maxType = TimeComplexity.ComplexityType.CONSTANT.ordinal();
+        int maxDegree = 1;
+        IntStack maxTypes = new IntStack();
+        IntStack maxDegrees = new IntStack();
+
+        nodes.push(top);
+        nextChildren.push(ast.firstChild(top));
+        while (true) {
+            int child = nextChildren.pop();
+            if (child != FlatAst.NONE) {
+                nextChildren.push(ast.nextSibling(child));
+                complexity = analyzeBefore(child);
+                if (complexity == null) {
+                    maxTypes.push(maxType);
+                    maxDegrees.push(maxDegree);
+                    maxType = TimeComplexity.ComplexityType.CONSTANT.ordinal();
+                    maxDegree = 1;
+                    nodes.push(child);
+                    nextChildren.push(ast.firstChild(child));
+                    continue;
+                }
+            } else {
+                int node = nodes.pop();
+                complexity = analyzeAfter(node, new TimeComplexity("Block", COMPLEXITY_TYPES[maxType], maxDegree));
+                if (nodes.isEmpty()) {
+                    return complexity;
+                }
+                maxType = maxTypes.pop();
+                maxDegree = maxDegrees.pop();
+            }
+
+            if (complexity.getComplexity().ordinal() > maxType) {
+                maxType = complexity.getComplexity().ordinal();
+                maxDegree = complexity.getDegree();
+            }
+        }
+    }
+
+    // The subtree of node analyzed as analyzeNode does, but on the call stack
+    private TimeComplexity analyzeNodeRecursively(int node) {
+        TimeComplexity complexity = analyzeBefore(node);
+        if (complexity != null) {
+            return complexity;
+        }
+
+        TimeComplexity largest = new TimeComplexity("Block", TimeComplexity.ComplexityType.CONSTANT, 1);
+        for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+            TimeComplexity childComplexity = analyzeNodeRecursively(child);
+            if (childComplexity.getComplexity().ordinal() > largest.getComplexity().ordinal()) {
+                largest = new TimeComplexity("Block", childComplexity.getComplexity(), childComplexity.getDegree());
+            }
+        }
+        return analyzeAfter(node, largest);
+    }
+
+    /**
+     * Returns the complexity of node if it follows from the node itself, or
+     * null if it depends on the complexity of its children.
+     */
+    private TimeComplexity analyzeBefore(int node) {
+        switch (ast.type(node)) {
             case PROGRAM:
             case FUNCTION:
             case STATEMENT:
             case BLOCK:
-                return analyzeBlock(node);
+            case CLASS_OR_INTERFACE:
+            case CONDITION:
+            case VARIABLE_DECLARATION:
+            case ARRAY_DECLARATION:
+            case RETURN_STATEMENT:
+            case NEW_INSTANCE:
+            case CONDITIONAL:
+                // Containers whose cost is that of the calls and statements inside them
+                return null;
             case FUNCTION_DECLARATION:
             case FUNCTION_DEFINITION:
-                return analyzeFunctionDeclaration(node);
+                TimeComplexity summary = summaries.get(node);
+                if (summary == null) {
+                    summary = analyzeFunctionDeclaration(node);
+                    if (summary != null) {
+                        summaries.put(node, summary);
+                    }
+                }
+                return summary;
             case LOOP:
             case FOR_LOOP:
             case WHILE_LOOP:
             case DO_WHILE_LOOP:
-                return analyzeLoop(node);
-            case CONDITIONAL:
-                return analyzeConditional(node);
+                if (isLoopBoundConstant(node)) {
+                    // Loop runs constant times, so O(1)
+                    return new TimeComplexity("Loop", TimeComplexity.ComplexityType.CONSTANT, 1);
+                }
+                return null;
             case FUNCTION_CALL:
                 return analyzeFunctionCall(node);
             case RECURSIVE_CALL:
@@ -55,38 +203,42 @@ public class TimeComplexityAnalyzer {
         }
     }
 
-    private TimeComplexity analyzeBlock(ASTNode block) {
-        TimeComplexity.ComplexityType maxType = TimeComplexity.ComplexityType.CONSTANT;
-        int maxDegree = 1;
-
-        for (ASTNode child : block.getChildren()) {
-            TimeComplexity childComplexity = analyzeNode(child);
-
-            if (childComplexity.getComplexity().ordinal() > maxType.ordinal()) {
-                maxType = childComplexity.getComplexity();
-                maxDegree = childComplexity.getDegree();
-            }
+    /**
+     * Returns the complexity of a node that {@link #analyzeBefore} left to
+     * its children, from the largest complexity among them.
+     */
+    private TimeComplexity analyzeAfter(int node, TimeComplexity children) {
+        switch (ast.type(node)) {
+            case LOOP:
+            case FOR_LOOP:
+            case WHILE_LOOP:
+            case DO_WHILE_LOOP:
+                return analyzeLoop(node, children);
+            case CONDITIONAL:
+                return new TimeComplexity("Conditional", children.getComplexity(), children.getDegree());
+            case FUNCTION_DECLARATION:
+            case FUNCTION_DEFINITION:
+                summaries.put(node, children);
+                return children;
+            case FUNCTION_CALL:
+                // The call costs what the calls in its arguments do, and what the function called does
+                TimeComplexity callee = analyzeCallee(node);
+                if (callee != null && callee.getComplexity().ordinal() > children.getComplexity().ordinal()) {
+                    children = callee;
+                }
+                return new TimeComplexity("Function Call", children.getComplexity(), children.getDegree());
+            default:
+                return children;
         }
-
-        return new TimeComplexity("Block", maxType, maxDegree);
     }
 
-    private TimeComplexity analyzeLoop(ASTNode loopNode) {
-        // Check if loop has constant bound
-        boolean isConstantBound = isLoopBoundConstant(loopNode);
-
-        if (isConstantBound) {
-            // Loop runs constant times, so O(1)
-            return new TimeComplexity("Loop", TimeComplexity.ComplexityType.CONSTANT, 1);
-        }
-
+    private TimeComplexity analyzeLoop(int loopNode, TimeComplexity innerComplexity) {
         // Check if loop has logarithmic growth (multiplicative/divisive update)
         boolean isLogarithmic = isLogarithmicLoop(loopNode);
 
         // Check if this loop contains amortized nested loops
         boolean hasAmortizedNestedLoop = hasAmortizedNestedLoop(loopNode);
 
-        TimeComplexity innerComplexity = analyzeBlock(loopNode);
         TimeComplexity.ComplexityType complexityType;
         int degree = 1;
 
@@ -125,42 +277,19 @@ public class TimeComplexityAnalyzer {
         return new TimeComplexity("Loop", complexityType, degree);
     }
 
-    private boolean isLogarithmicLoop(ASTNode loopNode) {
-        String update = loopNode.getUpdate();
-
-        // For FOR loops, check the update expression
-        if (update != null && !update.isEmpty()) {
-            // Remove all whitespace
-            String cleanUpdate = update.replaceAll("\\s+", "");
-
-            // Check for multiplicative or divisive operations
-            // Pattern: i *= 2, i /= 2, i = i * 2, i = i / 2, etc.
+    private boolean isLogarithmicLoop(int loopNode) {
+        LoopHeader header = ast.loopHeader(loopNode);
 
-            // Check for *= or /=
-            if (cleanUpdate.contains("*=") || cleanUpdate.contains("/=")) {
-                return true;
-            }
-
-            // Check for patterns like: i = i * 2, i = i / 2, j = j * 3, etc.
-            if (cleanUpdate.matches(".*=.*[*/].*")) {
-                // Has assignment with multiplication or division
-                String[] parts = cleanUpdate.split("=");
-                if (parts.length == 2) {
-                    String variable = parts[0].trim();
-                    String expression = parts[1].trim();
-
-                    // Check if the variable appears in the expression (i = i * 2)
-                    if (expression.contains(variable) && (expression.contains("*") || expression.contains("/"))) {
-                        return true;
-                    }
-                }
-            }
+        // For FOR loops, a multiplicative or divisive update: i *= 2, i = i / 2, etc.
+        if (header != null && (header.getUpdate() == LoopHeader.Update.MULTIPLY ||
+                header.getUpdate() == LoopHeader.Update.DIVIDE)) {
+            return true;
         }
 
         // For WHILE/DO-WHILE loops, check the body for binary search or
         // divide-and-conquer patterns
-        if (loopNode.getType() == ASTNode.Type.WHILE_LOOP ||
-                loopNode.getType() == ASTNode.Type.DO_WHILE_LOOP) {
+        if (ast.type(loopNode) == ASTNode.Type.WHILE_LOOP ||
+                ast.type(loopNode) == ASTNode.Type.DO_WHILE_LOOP) {
 
             // Check if body contains division patterns (binary search)
             if (hasBinarySearchPattern(loopNode)) {
@@ -171,71 +300,25 @@ public class TimeComplexityAnalyzer {
         return false;
     }
 
-    private boolean hasBinarySearchPattern(ASTNode loopNode) {
-        // Look for binary search patterns in the loop body:
-        // TRUE binary search requires BOTH:
-        // 1. mid = (low + high) / 2 (or similar)
-        // 2. high = mid - 1 OR low = mid + 1 (search space halving using mid)
-
-        StringBuilder allCode = new StringBuilder();
-        for (ASTNode child : loopNode.getChildren()) {
-            if (child.getValue() != null) {
-                allCode.append(child.getValue()).append(" ");
-            }
-        }
-
-        String fullCode = allCode.toString().replaceAll("\\s+", "");
-
-        boolean hasMidCalculation = false;
-        boolean hasSearchSpaceHalving = false;
-
-        // Check for mid calculation pattern: mid=(low+high)/2
-        if (fullCode.matches(".*mid=.*\\+.*\\/2.*") ||
-                fullCode.matches(".*mid=.*\\(.*\\+.*\\)\\/2.*")) {
-            hasMidCalculation = true;
-        }
-
-        // Check for search space halving using mid (not just decrement/increment by 1)
-        // Pattern: high = mid - 1, low = mid + 1, etc.
-        if (fullCode.contains("high=mid-") || fullCode.contains("low=mid+") ||
-                fullCode.contains("high=mid+") || fullCode.contains("low=mid-") ||
-                fullCode.contains("right=mid-") || fullCode.contains("left=mid+") ||
-                fullCode.contains("end=mid-") || fullCode.contains("start=mid+")) {
-            hasSearchSpaceHalving = true;
-        }
-
-        // BOTH conditions must be true for binary search
-        if (hasMidCalculation && hasSearchSpaceHalving) {
-            return true;
-        }
-
-        // Check for simple division by 2 patterns (like n = n / 2)
-        // This should match variable names on both sides
-        if (fullCode.matches(".*([a-z]+)=\\1\\/2.*") || fullCode.contains("/=2")) {
-            return true;
-        }
-
-        for (ASTNode child : loopNode.getChildren()) {
-            if (child.getChildren().size() > 0) {
-                if (hasBinarySearchPattern(child)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+    private boolean hasBinarySearchPattern(int loopNode) {
+        // TRUE binary search requires BOTH mid = (low + high) / 2 and
+        // high = mid - 1 OR low = mid + 1 (search space halving using mid),
+        // or else the loop halves a variable itself (like n = n / 2)
+        return facts.matches(loopNode, AlgorithmPattern.BINARY_SEARCH) ||
+                facts.matches(loopNode, AlgorithmPattern.HALVING);
     }
 
-    private boolean hasAmortizedNestedLoop(ASTNode outerLoop) {
+    private boolean hasAmortizedNestedLoop(int outerLoop) {
 
-        if (outerLoop.getType() == ASTNode.Type.FOR_LOOP) {
-            String outerInit = outerLoop.getInitialization();
-            String outerCond = outerLoop.getCondition();
-            String outerUpdate = outerLoop.getUpdate();
+        // Only a for loop with another loop in it can be amortized
+        if (ast.type(outerLoop) == ASTNode.Type.FOR_LOOP && facts.loopDepth(outerLoop) > 1) {
+            String outerInit = ast.initialization(outerLoop);
+            String outerCond = ast.condition(outerLoop);
+            String outerUpdate = ast.update(outerLoop);
 
-            for (ASTNode child : outerLoop.getChildren()) {
-                if (child.getType() == ASTNode.Type.WHILE_LOOP ||
-                        child.getType() == ASTNode.Type.DO_WHILE_LOOP) {
+            for (int child = ast.firstChild(outerLoop); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                if (ast.type(child) == ASTNode.Type.WHILE_LOOP ||
+                        ast.type(child) == ASTNode.Type.DO_WHILE_LOOP) {
 
                     String innerVar = extractLoopVariable(child);
 
@@ -267,7 +350,7 @@ public class TimeComplexityAnalyzer {
                 }
 
                 // Check nested children recursively
-                if (child.getChildren().size() > 0 && !isLoop(child)) {
+                if (ast.hasChildren(child) && !isLoop(child)) {
                     if (hasAmortizedInSubtree(child, outerLoop)) {
                         return true;
                     }
@@ -278,40 +361,44 @@ public class TimeComplexityAnalyzer {
         return false;
     }
 
-    private boolean hasAmortizedInSubtree(ASTNode node, ASTNode outerLoop) {
-        for (ASTNode child : node.getChildren()) {
-            // Only check WHILE and DO_WHILE loops for amortized analysis, NOT FOR loops
-            if (child.getType() == ASTNode.Type.WHILE_LOOP ||
-                    child.getType() == ASTNode.Type.DO_WHILE_LOOP) {
-
-                String innerVar = extractLoopVariable(child);
-
-                if (innerVar != null && !innerVar.isEmpty()) {
-                    // Check if this variable is managed by outer loop
-                    String outerInit = outerLoop.getInitialization();
-                    String outerCond = outerLoop.getCondition();
-                    String outerUpdate = outerLoop.getUpdate();
-
-                    boolean inOuterHeader = false;
-                    if (outerInit != null && outerInit.contains(innerVar))
-                        inOuterHeader = true;
-                    if (outerCond != null && outerCond.contains(innerVar))
-                        inOuterHeader = true;
-                    if (outerUpdate != null && outerUpdate.contains(innerVar))
-                        inOuterHeader = true;
-
-                    if (!inOuterHeader) {
-                        boolean isReset = checkNodeForAssignment(outerLoop, innerVar, child);
-                        if (!isReset) {
-                            return true;
+    private boolean hasAmortizedInSubtree(int node, int outerLoop) {
+        // Below node and nested statements, but not inside other loops
+        IntStack nodes = new IntStack();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            int current = nodes.pop();
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                // Only check WHILE and DO_WHILE loops for amortized analysis, NOT FOR loops
+                if (ast.type(child) == ASTNode.Type.WHILE_LOOP ||
+                        ast.type(child) == ASTNode.Type.DO_WHILE_LOOP) {
+
+                    String innerVar = extractLoopVariable(child);
+
+                    if (innerVar != null && !innerVar.isEmpty()) {
+                        // Check if this variable is managed by outer loop
+                        String outerInit = ast.initialization(outerLoop);
+                        String outerCond = ast.condition(outerLoop);
+                        String outerUpdate = ast.update(outerLoop);
+
+                        boolean inOuterHeader = false;
+                        if (outerInit != null && outerInit.contains(innerVar))
+                            inOuterHeader = true;
+                        if (outerCond != null && outerCond.contains(innerVar))
+                            inOuterHeader = true;
+                        if (outerUpdate != null && outerUpdate.contains(innerVar))
+                            inOuterHeader = true;
+
+                        if (!inOuterHeader) {
+                            boolean isReset = checkNodeForAssignment(outerLoop, innerVar, child);
+                            if (!isReset) {
+                                return true;
+                            }
                         }
                     }
                 }
-            }
 
-            if (child.getChildren().size() > 0 && !isLoop(child)) {
-                if (hasAmortizedInSubtree(child, outerLoop)) {
-                    return true;
+                if (ast.hasChildren(child) && !isLoop(child)) {
+                    nodes.push(child);
                 }
             }
         }
@@ -319,292 +406,72 @@ public class TimeComplexityAnalyzer {
         return false;
     }
 
-    private boolean hasAmortizedNestedLoopInChildren(ASTNode node) {
-        return false;
-    }
-
-    private boolean isLoop(ASTNode node) {
-        ASTNode.Type type = node.getType();
+    private boolean isLoop(int node) {
+        ASTNode.Type type = ast.type(node);
         return type == ASTNode.Type.FOR_LOOP ||
                 type == ASTNode.Type.WHILE_LOOP ||
                 type == ASTNode.Type.DO_WHILE_LOOP ||
                 type == ASTNode.Type.LOOP;
     }
 
-    private String extractLoopVariable(ASTNode loopNode) {
-        String initialization = loopNode.getInitialization();
-        String condition = loopNode.getCondition();
-
-        // Try initialization first (for FOR loops)
-        if (initialization != null && !initialization.isEmpty()) {
-            // Pattern: int j = 0, j = 0, etc.
-            String cleanInit = initialization.replaceAll("\\s+", "");
-            String[] parts = cleanInit.split("=");
-            if (parts.length >= 1) {
-                String var = parts[0].replaceAll("(int|char|long|short|float|double)", "").trim();
-                if (!var.isEmpty()) {
-                    return var;
-                }
-            }
-        }
-
-        // Try condition (for WHILE/DO_WHILE loops or if initialization not available)
-        if (condition != null && !condition.isEmpty()) {
-            // Pattern: j < n, j <= n, etc.
-            String cleanCond = condition.replaceAll("\\s+", "");
-
-            // Extract variable before comparison operator
-            String[] comparisonOps = { "<=", ">=", "!=", "==", "<", ">" };
-            for (String op : comparisonOps) {
-                if (cleanCond.contains(op)) {
-                    String[] parts = cleanCond.split(op, 2);
-                    if (parts.length >= 1) {
-                        String var = parts[0].trim();
-                        // Make sure it's a valid variable name (not a number)
-                        if (var.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
-                            return var;
-                        }
-                    }
-                    break;
-                }
-            }
-        }
-
-        return null;
+    private String extractLoopVariable(int loopNode) {
+        // From the initialization of a FOR loop, otherwise from the condition
+        LoopHeader header = ast.loopHeader(loopNode);
+        return header == null ? null : header.getVariable();
     }
 
-    private boolean isVariableResetInLoop(ASTNode loopNode, String variable, ASTNode excludeChild) {
+    private boolean isVariableResetInLoop(int loopNode, String variable, int excludeChild) {
         return checkNodeForAssignment(loopNode, variable, excludeChild);
     }
 
-    private boolean checkNodeForAssignment(ASTNode node, String variable, ASTNode excludeNode) {
-        if (node == excludeNode) {
-            return false;
-        }
-
-        if (containsAssignment(node, variable)) {
-            return true;
-        }
-
-        // Check all children
-        for (ASTNode child : node.getChildren()) {
-            if (checkNodeForAssignment(child, variable, excludeNode)) {
-                return true;
-            }
-        }
-
-        return false;
+    private boolean checkNodeForAssignment(int node, String variable, int excludeNode) {
+        // Pattern: j=, j++, j--, j+=, j-=, etc. anywhere below node but outside excludeNode
+        return facts.assigns(node, variable, excludeNode);
     }
 
-    private boolean containsAssignment(ASTNode node, String variable) {
-        // Check if this node contains an assignment to the variable
-        String value = node.getValue();
-
-        if (value != null && !value.isEmpty()) {
-            String cleanValue = value.replaceAll("\\s+", "");
-            // Pattern: j=, j++, j--, j+=, j-=, etc.
-            // After removing whitespace, check for these patterns
-            if (cleanValue.contains(variable + "=") ||
-                    cleanValue.contains(variable + "++") ||
-                    cleanValue.contains(variable + "--") ||
-                    cleanValue.contains(variable + "+=") ||
-                    cleanValue.contains(variable + "-=") ||
-                    cleanValue.contains(variable + "*=") ||
-                    cleanValue.contains(variable + "/=") ||
-                    cleanValue.equals(variable)) {
-                if (cleanValue.contains("=") && cleanValue.contains(variable)) {
-                    return true;
-                }
-                if (cleanValue.contains("++") || cleanValue.contains("--")) {
-                    return true;
-                }
-            }
-        }
+    private boolean isLoopBoundConstant(int loopNode) {
+        LoopHeader header = ast.loopHeader(loopNode);
 
-        return false;
-    }
-
-    private boolean isVariableDeclaredInNode(ASTNode node, String variable) {
-        for (ASTNode child : node.getChildren()) {
-            String value = child.getValue();
-            if (value != null && !value.isEmpty()) {
-                String cleanValue = value.replaceAll("\\s+", "");
-                if (cleanValue.matches(".*(int|char|long|short|float|double)\\s*" + variable + ".*")) {
-                    return true;
-                }
-            }
-
-            if (child.getChildren().size() > 0) {
-                if (isVariableDeclaredInNode(child, variable)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private boolean isLoopBoundConstant(ASTNode loopNode) {
-        String condition = loopNode.getCondition();
-
-        if (condition == null || condition.isEmpty()) {
+        if (header == null || header.getComparison() == null) {
             return false;
         }
 
         // First check if this loop has constant iterations (e.g., j=i; j<i+1)
-        if (hasConstantIterations(loopNode)) {
+        if (hasConstantIterations(header)) {
             return true;
         }
 
-        // Remove all whitespace for easier parsing
-        String cleanCondition = condition.replaceAll("\\s+", "");
-
-        // Look for patterns like: i<10, i<=5, i>0, i>=1, i!=100, i==20, etc.
-        String[] comparisonOps = { "<=", ">=", "!=", "==", "<", ">" };
-        for (String op : comparisonOps) {
-            if (cleanCondition.contains(op)) {
-                // Split by the operator
-                String[] parts = cleanCondition.split(op, 2);
-                if (parts.length == 2) {
-                    // Check both sides of the comparison
-                    String leftSide = parts[0].trim();
-                    String rightSide = parts[1].trim();
-
-                    // If either side is a pure numeric constant, loop has constant bound
-                    if (isNumericConstant(leftSide) || isNumericConstant(rightSide)) {
-                        return true;
-                    }
-
-                    // Also check for preprocessor constants (all uppercase letters/digits)
-                    // like MAX_SIZE, ARRAY_LEN, etc. Treat these as constants
-                    if (isPreprocessorConstant(leftSide) || isPreprocessorConstant(rightSide)) {
-                        return true;
-                    }
-                }
-                break; // Found a comparison operator, no need to check others
-            }
-        }
-
-        return false; // No constant bound found
+        // A number or a preprocessor constant such as MAX_SIZE on either side: i<10, MAX>=i
+        return isConstant(header.getCounter()) || isConstant(header.getBound());
     }
 
-    private boolean hasConstantIterations(ASTNode loopNode) {
-        String initialization = loopNode.getInitialization();
-        String condition = loopNode.getCondition();
-
-        if (initialization == null || initialization.isEmpty() ||
-                condition == null || condition.isEmpty()) {
-            return false;
-        }
-
-        // Remove whitespace
-        String cleanInit = initialization.replaceAll("\\s+", "");
-        String cleanCond = condition.replaceAll("\\s+", "");
-
-        // Pattern: j = i (loop var initialized to another variable)
-        // Extract loop variable and its initial value
-        // Pattern: variable = value (or type variable = value)
-        String initPattern = ".*=.*";
-        if (!cleanInit.matches(initPattern)) {
-            return false;
-        }
-
-        // Extract the variable and its initialization value
-        // Handle patterns like: j=i, int j=i, etc.
-        String[] initParts = cleanInit.split("=");
-        if (initParts.length != 2) {
-            return false;
-        }
-
-        // Get the loop variable (remove type keywords like int, char, etc.)
-        String loopVar = initParts[0].replaceAll("(int|char|long|short|float|double)", "").trim();
-        String initValue = initParts[1].trim();
-
-        // Skip if initialization is with a constant (already handled elsewhere)
-        if (isNumericConstant(initValue)) {
-            return false;
-        }
+    private boolean hasConstantIterations(LoopHeader header) {
+        LoopHeader.Operand counter = header.getCounter();
+        LoopHeader.Operand initialValue = header.getInitialValue();
+        LoopHeader.Operand bound = header.getBound();
 
-        // Check if condition uses the same loop variable
-        if (!cleanCond.contains(loopVar)) {
+        // Pattern: j = i; j < i + constant, j <= i, etc. The loop variable
+        // starts at another variable and stops a constant distance from it
+        if (counter == null || counter.getKind() != LoopHeader.Operand.Kind.VARIABLE ||
+                !counter.getName().equals(header.getVariable())) {
             return false;
         }
-
-        // Pattern: j < i + constant, j <= i, j < i + 1, etc.
-
-        String[] comparisonOps = { "<=", ">=", "<", ">", "!=", "==" };
-        for (String op : comparisonOps) {
-            if (cleanCond.contains(op)) {
-                String[] condParts = cleanCond.split(op, 2);
-                if (condParts.length == 2) {
-                    String leftSide = condParts[0].trim();
-                    String rightSide = condParts[1].trim();
-
-                    if (leftSide.equals(loopVar) && rightSide.contains(initValue)) {
-                        String remainder = rightSide.replace(initValue, "").trim();
-
-                        // If remainder is empty, it's just comparing with same value (j <= i)
-                        if (remainder.isEmpty()) {
-                            return true; // Constant 1 iteration
-                        }
-
-                        // Check if remainder is +constant or -constant
-                        if (remainder.matches("[+\\-]\\d+")) {
-                            return true; // Constant iterations
-                        }
-                    } else if (rightSide.equals(loopVar) && leftSide.contains(initValue)) {
-                        // Reverse case (i+1 > j)
-                        String remainder = leftSide.replace(initValue, "").trim();
-                        if (remainder.isEmpty() || remainder.matches("[+\\-]\\d+")) {
-                            return true;
-                        }
-                    }
-                }
-                break;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean isPreprocessorConstant(String str) {
-        if (str == null || str.isEmpty()) {
+        if (initialValue == null || initialValue.getName() == null ||
+                initialValue.getKind() == LoopHeader.Operand.Kind.OFFSET) {
             return false;
         }
-
-        str = str.trim();
-
-        // Check if string is all uppercase with optional underscores and digits
-        // Examples: MAX_SIZE, ARRAY_LEN, SIZE100, N
-        // Exclude single lowercase variables like 'i', 'j', 'n'
-        if (str.length() > 1 && str.matches("[A-Z][A-Z0-9_]*")) {
-            return true;
-        }
-
-        return false;
+        return bound != null && initialValue.getName().equals(bound.getName());
     }
 
-    private boolean isNumericConstant(String str) {
-        if (str == null || str.isEmpty()) {
-            return false;
-        }
-
-        str = str.trim();
-
-        // Check if string represents a number (integer or decimal)
-        try {
-            Double.parseDouble(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    private boolean isConstant(LoopHeader.Operand operand) {
+        return operand != null && operand.isConstant();
     }
 
-    private TimeComplexity analyzeRecursiveCall(ASTNode recursiveNode) {
+    private TimeComplexity analyzeRecursiveCall(int recursiveNode) {
         // Detect recursion pattern based on the function containing it
-        ASTNode functionNode = findParentFunction(recursiveNode);
+        int functionNode = findParentFunction(recursiveNode);
 
-        if (functionNode != null) {
+        if (functionNode != FlatAst.NONE) {
             // Count recursive calls in the function
             int recursiveCallCount = countRecursiveCalls(functionNode);
 
@@ -628,67 +495,23 @@ public class TimeComplexityAnalyzer {
         return new TimeComplexity("Recursive Call", TimeComplexity.ComplexityType.LINEAR, 1);
     }
 
-    private ASTNode findParentFunction(ASTNode node) {
-        return null;
+    private int findParentFunction(int node) {
+        return ast.enclosingFunction(node);
     }
 
-    private int countRecursiveCalls(ASTNode functionNode) {
-        int count = 0;
-        for (ASTNode child : functionNode.getChildren()) {
-            if (child.getType() == ASTNode.Type.RECURSIVE_CALL) {
-                count++;
-            }
-            count += countRecursiveCalls(child);
-        }
-        return count;
+    // Counts the recursive calls below the node, not the node itself
+    private int countRecursiveCalls(int functionNode) {
+        int count = facts.recursiveCalls(functionNode);
+        return ast.type(functionNode) == ASTNode.Type.RECURSIVE_CALL ? count - 1 : count;
     }
 
-    private boolean isDivideAndConquerRecursion(ASTNode functionNode) {
-        // Problem size halved each time: func(n/2), mid = (low+high)/2
-        // Look for "mid" variable calculations
-
-        String fullCode = extractAllCode(functionNode);
-        fullCode = fullCode.toLowerCase(); // Case insensitive
-
-        // Pattern 1: Check for mid calculation (binary search pattern)
-        // mid = (low + high) / 2 or similar
-        if (fullCode.contains("mid")) {
-            // If function has "mid" variable and recursion, likely divide-and-conquer
-            int recursiveCallCount = countRecursiveCalls(functionNode);
-            if (recursiveCallCount > 0) {
-                // Check if mid is calculated by division
-                if (fullCode.matches(".*mid.*=.*/.*2.*") ||
-                        fullCode.contains("/2") ||
-                        fullCode.contains("/ 2")) {
-                    return true;
-                }
-            }
-        }
-
-        // Pattern 2: Direct division in recursion (like func(n/2))
-        if (fullCode.contains("/2") || fullCode.contains("/ 2") || fullCode.contains(">>1")) {
-            return true;
-        }
-
-        return false;
-    }
-
-    private String extractAllCode(ASTNode node) {
-        StringBuilder sb = new StringBuilder();
-        extractCodeHelper(node, sb);
-        return sb.toString();
+    private boolean isDivideAndConquerRecursion(int functionNode) {
+        // Problem size halved each time: func(n/2), func(n >> 1), or a
+        // recursive function with mid = (low+high)/2
+        return facts.matches(functionNode, AlgorithmPattern.DIVIDE_AND_CONQUER);
     }
 
-    private void extractCodeHelper(ASTNode node, StringBuilder sb) {
-        if (node.getValue() != null) {
-            sb.append(node.getValue()).append(" ");
-        }
-        for (ASTNode child : node.getChildren()) {
-            extractCodeHelper(child, sb);
-        }
-    }
-
-    private boolean hasConditionalRecursion(ASTNode functionNode) {
+    private boolean hasConditionalRecursion(int functionNode) {
         int totalRecursiveCalls = countRecursiveCalls(functionNode);
         if (totalRecursiveCalls < 2) {
             return false;
@@ -705,289 +528,156 @@ public class TimeComplexityAnalyzer {
         return false;
     }
 
-    private boolean hasSequentialRecursiveCalls(ASTNode node) {
-        List<ASTNode> children = node.getChildren();
-        int directRecursiveCalls = 0;
-
-        // Count recursive calls at this level
-        for (ASTNode child : children) {
-            if (child.getType() == ASTNode.Type.RECURSIVE_CALL) {
-                directRecursiveCalls++;
+    private boolean hasSequentialRecursiveCalls(int node) {
+        IntStack nodes = new IntStack();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            int current = nodes.pop();
+            if (facts.recursiveCalls(current) < 2) {
+                continue;
             }
-        }
+            int directRecursiveCalls = 0;
 
-        if (directRecursiveCalls >= 2) {
-            int recursiveCallsAfterReturn = 0;
-            for (int i = 1; i < children.size(); i++) {
-                if (children.get(i).getType() == ASTNode.Type.RECURSIVE_CALL) {
-                    if (children.get(i - 1).getType() == ASTNode.Type.RETURN_STATEMENT) {
-                        recursiveCallsAfterReturn++;
-                    }
+            // Count recursive calls at this level
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                if (ast.type(child) == ASTNode.Type.RECURSIVE_CALL) {
+                    directRecursiveCalls++;
                 }
             }
 
-            if (recursiveCallsAfterReturn == directRecursiveCalls && directRecursiveCalls >= 2) {
-                return false;
-            }
-            return true;
-        }
-
-        for (ASTNode child : children) {
-            if (child.getType() != ASTNode.Type.RETURN_STATEMENT) {
-                if (hasSequentialRecursiveCalls(child)) {
-                    return true;
+            if (directRecursiveCalls >= 2) {
+                int recursiveCallsAfterReturn = 0;
+                int previous = FlatAst.NONE;
+                for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    if (ast.type(child) == ASTNode.Type.RECURSIVE_CALL) {
+                        if (previous != FlatAst.NONE && ast.type(previous) == ASTNode.Type.RETURN_STATEMENT) {
+                            recursiveCallsAfterReturn++;
+                        }
+                    }
+                    previous = child;
                 }
-            }
-        }
-
-        return false;
-    }
 
-    private boolean hasRecursionInsideConditional(ASTNode node) {
-        if (node.getType() == ASTNode.Type.CONDITIONAL ||
-                node.getType() == ASTNode.Type.IF_STATEMENT) {
-            // Check if this conditional contains recursive calls
-            if (containsRecursiveCall(node)) {
-                return true;
-            }
-        }
-
-        // Check children
-        for (ASTNode child : node.getChildren()) {
-            if (hasRecursionInsideConditional(child)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean hasRecursionInMutuallyExclusiveBranches(ASTNode node) {
-        if (node.getType() == ASTNode.Type.CONDITIONAL ||
-                node.getType() == ASTNode.Type.IF_STATEMENT) {
-
-            int returnStatementsWithRecursion = 0;
-
-            for (ASTNode child : node.getChildren()) {
-                if (hasReturnWithRecursion(child)) {
-                    returnStatementsWithRecursion++;
+                // Calls that each follow a return are alternatives; the levels below are not looked at
+                if (recursiveCallsAfterReturn == directRecursiveCalls && directRecursiveCalls >= 2) {
+                    continue;
                 }
-            }
-
-            if (returnStatementsWithRecursion >= 2) {
-                return true;
-            }
-        }
-
-        // Check children recursively
-        for (ASTNode child : node.getChildren()) {
-            if (hasRecursionInMutuallyExclusiveBranches(child)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean hasReturnWithRecursion(ASTNode node) {
-        // Check if this branch has a return statement that contains a recursive call
-        if (node.getType() == ASTNode.Type.RETURN_STATEMENT) {
-            if (containsRecursiveCall(node)) {
                 return true;
             }
-        }
 
-        // For direct children only (not deep recursion)
-        for (ASTNode child : node.getChildren()) {
-            if (child.getType() == ASTNode.Type.RETURN_STATEMENT && containsRecursiveCall(child)) {
-                return true;
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                if (ast.type(child) != ASTNode.Type.RETURN_STATEMENT) {
+                    nodes.push(child);
+                }
             }
         }
 
         return false;
     }
 
-    private boolean hasRecursionInConditionalBranches(ASTNode node) {
-        if (node.getType() == ASTNode.Type.CONDITIONAL ||
-                node.getType() == ASTNode.Type.IF_STATEMENT) {
-            // Check if different children have recursive calls
-            int branchesWithRecursion = 0;
-            for (ASTNode child : node.getChildren()) {
-                if (containsRecursiveCall(child)) {
-                    branchesWithRecursion++;
-                }
+    private boolean hasRecursionInsideConditional(int node) {
+        IntStack nodes = new IntStack();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            int current = nodes.pop();
+            // Subtrees without recursive calls are skipped whole
+            if (!containsRecursiveCall(current)) {
+                continue;
             }
-            if (branchesWithRecursion >= 2) {
+            if (ast.type(current) == ASTNode.Type.CONDITIONAL ||
+                    ast.type(current) == ASTNode.Type.IF_STATEMENT) {
+                // This conditional contains recursive calls
                 return true;
             }
-        }
 
-        // Check children recursively
-        for (ASTNode child : node.getChildren()) {
-            if (hasRecursionInConditionalBranches(child)) {
-                return true;
+            // Check children
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                nodes.push(child);
             }
         }
-        return false;
-    }
 
-    private boolean containsRecursiveCall(ASTNode node) {
-        if (node.getType() == ASTNode.Type.RECURSIVE_CALL) {
-            return true;
-        }
-        for (ASTNode child : node.getChildren()) {
-            if (containsRecursiveCall(child)) {
-                return true;
-            }
-        }
         return false;
     }
 
-    private boolean simpleLinearRecursion(ASTNode node) {
-        if (node.getType() != ASTNode.Type.FUNCTION_DECLARATION
-                && node.getType() != ASTNode.Type.FUNCTION_DEFINITION) {
-            return false;
-        }
-
-        String functionName = node.getFunctionName();
-        if (functionName == null || functionName.isEmpty()) {
-            return false;
-        }
-
-        int recursiveCallCount = countRecursiveCalls(node);
-        return recursiveCallCount == 1;
+    private boolean containsRecursiveCall(int node) {
+        return facts.recursiveCalls(node) > 0;
     }
 
-    private boolean multipleRecursiveCalls(ASTNode recursiveNode) {
+    private boolean multipleRecursiveCalls(int recursiveNode) {
         int recursiveCallCount = countRecursiveCalls(recursiveNode);
         return recursiveCallCount > 1;
     }
 
-    private boolean hasMultipleRecursiveCallsInSameReturn(ASTNode functionNode) {
+    private boolean hasMultipleRecursiveCallsInSameReturn(int functionNode) {
         return checkForAdjacentRecursiveCalls(functionNode);
     }
 
-    private boolean checkForAdjacentRecursiveCalls(ASTNode node) {
-        List<ASTNode> children = node.getChildren();
-
-        for (int i = 0; i < children.size(); i++) {
-            ASTNode child = children.get(i);
+    private boolean checkForAdjacentRecursiveCalls(int node) {
+        IntStack nodes = new IntStack();
+        nodes.push(node);
+        while (!nodes.isEmpty()) {
+            int current = nodes.pop();
+            if (facts.recursiveCalls(current) < 2) {
+                continue;
+            }
+            for (int child = ast.firstChild(current); child != FlatAst.NONE; child = ast.nextSibling(child)) {
 
-            if (child.getType() == ASTNode.Type.RETURN_STATEMENT) {
-                int recursiveCallCount = 0;
-                for (int j = i + 1; j < children.size() && j < i + 10; j++) {
-                    if (children.get(j).getType() == ASTNode.Type.RETURN_STATEMENT) {
-                        break;
+                if (ast.type(child) == ASTNode.Type.RETURN_STATEMENT) {
+                    int recursiveCallCount = 0;
+                    // Looks at most nine siblings ahead
+                    int next = ast.nextSibling(child);
+                    for (int j = 1; next != FlatAst.NONE && j < 10; j++, next = ast.nextSibling(next)) {
+                        if (ast.type(next) == ASTNode.Type.RETURN_STATEMENT) {
+                            break;
+                        }
+                        if (ast.type(next) == ASTNode.Type.RECURSIVE_CALL) {
+                            recursiveCallCount++;
+                        }
                     }
-                    if (children.get(j).getType() == ASTNode.Type.RECURSIVE_CALL) {
-                        recursiveCallCount++;
+                    if (recursiveCallCount >= 2) {
+                        return true;
                     }
                 }
-                if (recursiveCallCount >= 2) {
-                    return true;
-                }
-            }
 
-            if (child.getType() == ASTNode.Type.RETURN_STATEMENT) {
-                int callsInReturn = countRecursiveCallsInNode(child);
-                if (callsInReturn >= 2) {
-                    return true;
+                if (ast.type(child) == ASTNode.Type.RETURN_STATEMENT) {
+                    int callsInReturn = countRecursiveCallsInNode(child);
+                    if (callsInReturn >= 2) {
+                        return true;
+                    }
                 }
-            }
 
-            // Recursively check children
-            if (checkForAdjacentRecursiveCalls(child)) {
-                return true;
+                // Check the children of the child in turn
+                nodes.push(child);
             }
         }
 
         return false;
     }
 
-    private boolean checkReturnStatementsForMultipleRecursion(ASTNode node) {
-        if (node.getType() == ASTNode.Type.RETURN_STATEMENT) {
-            // Count recursive calls within this return statement
-            int callsInReturn = countRecursiveCallsInNode(node);
-            if (callsInReturn >= 2) {
-                return true;
-            }
-        }
-
-        // Check children
-        for (ASTNode child : node.getChildren()) {
-            if (checkReturnStatementsForMultipleRecursion(child)) {
-                return true;
-            }
-        }
-        return false;
+    private int countRecursiveCallsInNode(int node) {
+        return facts.recursiveCalls(node);
     }
 
-    private int countRecursiveCallsInNode(ASTNode node) {
-        int count = 0;
-        if (node.getType() == ASTNode.Type.RECURSIVE_CALL) {
-            count++;
-        }
-        for (ASTNode child : node.getChildren()) {
-            count += countRecursiveCallsInNode(child);
-        }
-        return count;
-    }
-
-    private boolean containsLoop(ASTNode node) {
+    private boolean containsLoop(int node) {
         // Check if this function contains any loop (for, while, do-while)
-        if (node.getType() == ASTNode.Type.FOR_LOOP ||
-                node.getType() == ASTNode.Type.WHILE_LOOP ||
-                node.getType() == ASTNode.Type.DO_WHILE_LOOP ||
-                node.getType() == ASTNode.Type.LOOP) {
-            return true;
-        }
-
-        // Check children
-        for (ASTNode child : node.getChildren()) {
-            if (containsLoop(child)) {
-                return true;
-            }
-        }
-        return false;
+        return facts.containsLoop(node);
     }
 
-    private boolean containsFunctionCalls(ASTNode node) {
+    private boolean containsFunctionCalls(int node) {
         // Check if this function makes calls to other functions (not recursive)
-        if (node.getType() == ASTNode.Type.FUNCTION_CALL) {
-            return true;
-        }
-
-        // Check children
-        for (ASTNode child : node.getChildren()) {
-            if (containsFunctionCalls(child)) {
-                return true;
-            }
-        }
-        return false;
+        return facts.containsCall(node);
     }
 
-    private TimeComplexity analyzeConditional(ASTNode conditionalNode) {
-        TimeComplexity.ComplexityType maxType = TimeComplexity.ComplexityType.CONSTANT;
-        int maxDegree = 1;
-
-        for (ASTNode child : conditionalNode.getChildren()) {
-            TimeComplexity childComplexity = analyzeNode(child);
-            if (childComplexity.getComplexity().ordinal() > maxType.ordinal()) {
-                maxType = childComplexity.getComplexity();
-                maxDegree = childComplexity.getDegree();
-            }
+    // Null if the function is not recursive, for its body to be analyzed
+    private TimeComplexity analyzeFunctionDeclaration(int functionNode) {
+        if (ast.isSkimmed(functionNode) && (ast.bodyFlags(functionNode) & FlatAst.BODY_CALLS) == 0) {
+            // No loops, recursion or calls, so every statement in the body is a constant step
+            return new TimeComplexity("Function Declaration", TimeComplexity.ComplexityType.CONSTANT, 1);
         }
 
-        return new TimeComplexity("Conditional", maxType, maxDegree);
-    }
-
-    private TimeComplexity analyzeFunctionDeclaration(ASTNode functionNode) {
         // Analyze the body of the function declaration
         // First check if this function has recursion
         int recursiveCallCount = countRecursiveCalls(functionNode);
 
-        String funcName = functionNode.getFunctionName();
-        String nodeName = functionNode.getValue();
-
         if (recursiveCallCount > 0) {
             // This is a recursive function
 
@@ -1010,32 +700,8 @@ public class TimeComplexityAnalyzer {
                 // Check for QuickSort pattern FIRST
                 // This must come before other checks because quickSort has 2 recursive calls
                 // but is NOT binary search or fibonacci pattern
-                String functionCode = extractAllCode(functionNode).toLowerCase();
-
-                // Check multiple sources for QuickSort identification
-                boolean isQuickSort = false;
-
-                // Check 1: functionName field contains "quick" or "partition"
-                if (funcName != null) {
-                    String lowerFuncName = funcName.toLowerCase();
-                    if (lowerFuncName.contains("quick") || lowerFuncName.contains("partition")) {
-                        isQuickSort = true;
-                    }
-                }
-
-                // Check 2: nodeName (getValue) contains "quick" or "partition"
-                if (!isQuickSort && nodeName != null) {
-                    String lowerNodeName = nodeName.toLowerCase();
-                    if (lowerNodeName.contains("quick") || lowerNodeName.contains("partition")) {
-                        isQuickSort = true;
-                    }
-                }
-
-                // Check 3: Function code contains "partition" or "pivot"
-                boolean hasPartitionPattern = functionCode.contains("partition") ||
-                        functionCode.contains("pivot");
-
-                if (isQuickSort || hasPartitionPattern) {
+                // Named quick or partition, or mentions partition or pivot
+                if (facts.matches(functionNode, AlgorithmPattern.QUICK_SORT)) {
                     // Quick Sort pattern: worst case O(n²) due to unbalanced partitions
                     return new TimeComplexity("Function Declaration", TimeComplexity.ComplexityType.QUADRATIC, 1);
                 }
@@ -1059,13 +725,8 @@ public class TimeComplexityAnalyzer {
 
                 if (hasLinearWork) {
                     // Has O(n) work per level
-                    // Check if it has balanced mid calculation (Merge Sort pattern)
-                    boolean isDivideConquer = isDivideAndConquerRecursion(functionNode);
-
-                    // Also check for merge-related patterns
-                    boolean hasMergePattern = functionCode.contains("merge");
-
-                    if (isDivideConquer && hasMergePattern) {
+                    // Check for balanced mid calculation and a merge (Merge Sort pattern)
+                    if (facts.matches(functionNode, AlgorithmPattern.MERGE_SORT)) {
                         // Merge Sort pattern: T(n) = 2T(n/2) + O(n) = O(n log n)
                         return new TimeComplexity("Function Declaration", TimeComplexity.ComplexityType.LINEARITHMIC,
                                 1);
@@ -1077,10 +738,7 @@ public class TimeComplexityAnalyzer {
                 } else {
                     // Divide and conquer without obvious extra work
                     // Check if it's merge sort (has merge pattern and divide-conquer)
-                    boolean isDivideConquer = isDivideAndConquerRecursion(functionNode);
-                    boolean hasMergePattern = functionCode.contains("merge");
-
-                    if (isDivideConquer && hasMergePattern) {
+                    if (facts.matches(functionNode, AlgorithmPattern.MERGE_SORT)) {
                         // Merge sort without inline loop (merge in separate function)
                         return new TimeComplexity("Function Declaration", TimeComplexity.ComplexityType.LINEARITHMIC,
                                 1);
@@ -1093,15 +751,17 @@ public class TimeComplexityAnalyzer {
             }
         }
 
-        // Not recursive, analyze the body normally
-        return analyzeBlock(functionNode);
+        // Not recursive, the body costs what its statements do
+        return null;
     }
 
-    private TimeComplexity analyzeFunctionCall(ASTNode functionCallNode) {
-        String functionName = functionCallNode.getFunctionName();
+    // Null unless the function is a known one, for the arguments to be analyzed
+    private TimeComplexity analyzeFunctionCall(int functionCallNode) {
+        String functionName = ast.functionName(functionCallNode);
 
-        // Check for known library functions with specific complexities
-        if (functionName != null) {
+        // A function of the program is added to the arguments by analyzeAfter,
+        // otherwise check for known library functions with specific complexities
+        if (functionName != null && findFunctionDefinition(functionName) == FlatAst.NONE) {
             // Examples of known time complexities
             if (functionName.equals("sort") || functionName.contains("Sort")) {
                 return new TimeComplexity("Function Call", TimeComplexity.ComplexityType.LINEARITHMIC, 1);
@@ -1111,10 +771,29 @@ public class TimeComplexityAnalyzer {
             }
         }
 
-        return new TimeComplexity("Function Call", TimeComplexity.ComplexityType.CONSTANT, 1);
+        // Otherwise the call costs what the calls in its arguments do
+        return null;
+    }
+
+    /**
+     * Returns the complexity of the function a call is to, from its summary,
+     * or null if it is not defined in the tree. A call to a function that can
+     * call back the one making it is part of a recursion, which is linear as
+     * for a single recursive call.
+     */
+    private TimeComplexity analyzeCallee(int functionCallNode) {
+        String functionName = ast.functionName(functionCallNode);
+        int function = functionName == null ? FlatAst.NONE : findFunctionDefinition(functionName);
+        if (function == FlatAst.NONE) {
+            return null;
+        }
+        if (calls.inSameComponent(findParentFunction(functionCallNode), function)) {
+            return new TimeComplexity("Recursive Call", TimeComplexity.ComplexityType.LINEAR, 1);
+        }
+        return summaries.get(function);
     }
 
-    private ASTNode findFunctionDefinition(String functionName) {
-        return null;
+    private int findFunctionDefinition(String functionName) {
+        return ast.functionDefinition(functionName);
     }
 }
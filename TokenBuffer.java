@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact token storage: one byte of type and two int offsets per token,
+ * indexing into the original source text. Token values are only turned into
+ * Strings when asked for, and fixed tokens (keywords, operators, separators)
+ * come back as the shared flyweights of the {@link TokenTable}.
+ *
+ * The columns come from a {@link Storage}, on the heap unless one in native
+ * memory is passed in, in which case the buffer must not be used once the
+ * storage is closed.
+ */
+public class TokenBuffer implements TokenSource {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private CharSequence source;
+    private final TokenTable table;
+    private final Storage storage;
+
+    private final ByteColumn types;
+    private final IntColumn starts;
+    private final IntColumn ends;
+    private int size;
+    // Index of the matching bracket for every bracket token, built on first use
+    private IntColumn matches;
+
+    public TokenBuffer(CharSequence source, TokenTable table) {
+        this(source, table, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source, TokenTable table, int capacity) {
+        this(source, table, capacity, Storage.HEAP);
+    }
+
+    public TokenBuffer(CharSequence source, TokenTable table, int capacity, Storage storage) {
+        this.source = source;
+        this.table = table;
+        this.storage = storage;
+        int initial = Math.max(capacity, 16);
+        this.types = storage.bytes(initial);
+        this.starts = storage.ints(initial);
+        this.ends = storage.ints(initial);
+    }
+
+    /**
+     * Wraps an already materialized token list. The values are laid out in a
+     * fresh source string separated by spaces.
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            starts[i] = text.length();
+            text.append(tokens.get(i).getValue()).append(' ');
+        }
+
+        TokenBuffer buffer = new TokenBuffer(text.toString(), null, tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            buffer.add(token.getType(), starts[i], starts[i] + token.getValue().length());
+        }
+        return buffer;
+    }
+
+    public void add(Token.Type type, int start, int end) {
+        if (size == types.capacity()) {
+            resize(size + (size >> 1));
+        }
+        types.set(size, (byte) type.ordinal());
+        starts.set(size, start);
+        ends.set(size, end);
+        size++;
+        dropMatches();
+    }
+
+    /**
+     * Appends all tokens of another buffer over the same source.
+     */
+    public void addAll(TokenBuffer other) {
+        int required = size + other.size;
+        if (required > types.capacity()) {
+            resize(required);
+        }
+        types.copyFrom(other.types, other.size, size);
+        starts.copyFrom(other.starts, other.size, size);
+        ends.copyFrom(other.ends, other.size, size);
+        size = required;
+        dropMatches();
+    }
+
+    private void resize(int capacity) {
+        types.resize(capacity);
+        starts.resize(capacity);
+        ends.resize(capacity);
+    }
+
+    private void dropMatches() {
+        if (matches != null) {
+            matches.free();
+            matches = null;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        dropMatches();
+    }
+
+    /**
+     * Empties the buffer and points it at a new source, keeping its columns
+     * so that lexing another file into it allocates nothing until it needs
+     * more room.
+     */
+    public void reset(CharSequence source) {
+        this.source = source;
+        clear();
+    }
+
+    @Override
+    public Storage storage() {
+        return storage;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index < size;
+    }
+
+    @Override
+    public void release(int index) {
+        // Everything is in memory already
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    @Override
+    public Token.Type type(int index) {
+        return TYPES[types.get(index)];
+    }
+
+    public int start(int index) {
+        return starts.get(index);
+    }
+
+    public int end(int index) {
+        return ends.get(index);
+    }
+
+    public int length(int index) {
+        return ends.get(index) - starts.get(index);
+    }
+
+    /**
+     * Returns the token text. Fixed tokens return their canonical String,
+     * identifiers and literals are copied out of the source.
+     */
+    @Override
+    public String value(int index) {
+        Token canonical = canonical(index);
+        if (canonical != null) {
+            return canonical.getValue();
+        }
+        return source.subSequence(starts.get(index), ends.get(index)).toString();
+    }
+
+    /**
+     * Compares the token text without materializing it.
+     */
+    @Override
+    public boolean is(int index, String value) {
+        int start = starts.get(index);
+        if (ends.get(index) - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (source.charAt(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void appendTo(int index, StringBuilder sb) {
+        sb.append(source, starts.get(index), ends.get(index));
+    }
+
+    @Override
+    public Token get(int index) {
+        Token canonical = canonical(index);
+        if (canonical != null) {
+            return canonical;
+        }
+        return new Token(type(index), source.subSequence(starts.get(index), ends.get(index)).toString());
+    }
+
+    /**
+     * Answers from a table of matching brackets, computed in one pass over
+     * the buffer the first time it is needed.
+     */
+    @Override
+    public int closing(int index) {
+        if (matches == null) {
+            matches = matchBrackets();
+        }
+        return matches.get(index);
+    }
+
+    /**
+     * Pre-scans tokens from up to to for statement boundaries roughly
+     * chunkSize tokens apart. A boundary is the token after a "}" whose "{"
+     * is not nested in another brace pair, so it usually starts a function,
+     * class member or other top-level statement. Brace pairs are jumped over
+     * with the bracket table, so only the top-level tokens are visited.
+     *
+     * The returned array starts with from and ends with to. The bracket
+     * table is built here, before any other thread reads the buffer.
+     */
+    public int[] findStatementBoundaries(int from, int to, int chunkSize) {
+        if (matches == null) {
+            matches = matchBrackets();
+        }
+        int[] boundaries = new int[(to - from) / chunkSize + 2];
+        int count = 0;
+        boundaries[count++] = from;
+
+        int target = from + chunkSize;
+        int index = from;
+        while (index < to) {
+            if (matches.get(index) <= index || source.charAt(starts.get(index)) != '{') {
+                index++;
+                continue;
+            }
+            int next = matches.get(index) + 1;
+            if (next >= to) {
+                break;
+            }
+            if (next >= target) {
+                boundaries[count++] = next;
+                target = next + chunkSize;
+            }
+            index = next;
+        }
+        boundaries[count++] = to;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Pairs brackets with one stack per kind, so that "(" only ever matches
+     * ")" no matter how "[" and "{" nest around it. An opening bracket that is
+     * never closed maps to size, a closing bracket maps back to its opening
+     * one or to -1, and every other token maps to -1.
+     */
+    private IntColumn matchBrackets() {
+        IntColumn match = storage.ints(size);
+        int[][] open = new int[3][16];
+        int[] depth = new int[3];
+        for (int i = 0; i < size; i++) {
+            match.set(i, -1);
+            if (ends.get(i) - starts.get(i) != 1 || TYPES[types.get(i)] != Token.Type.SEPARATOR) {
+                continue;
+            }
+            char c = source.charAt(starts.get(i));
+            int kind = c == '(' || c == ')' ? 0 : c == '[' || c == ']' ? 1 : c == '{' || c == '}' ? 2 : -1;
+            if (kind < 0) {
+                continue;
+            }
+            if (c == '(' || c == '[' || c == '{') {
+                if (depth[kind] == open[kind].length) {
+                    open[kind] = Arrays.copyOf(open[kind], depth[kind] * 2);
+                }
+                open[kind][depth[kind]++] = i;
+                match.set(i, size);
+            } else if (depth[kind] > 0) {
+                int opening = open[kind][--depth[kind]];
+                match.set(opening, i);
+                match.set(i, opening);
+            }
+        }
+        return match;
+    }
+
+    private Token canonical(int index) {
+        if (table == null) {
+            return null;
+        }
+        switch (type(index)) {
+            case KEYWORD:
+            case OPERATOR:
+            case SEPARATOR:
+                return table.canonical(source, starts.get(index), ends.get(index));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Materializes the buffer as a token list, for callers of the List based API.
+     */
+    public List<Token> toList() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(get(i));
+        }
+        return tokens;
+    }
+}
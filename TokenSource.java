@@ -0,0 +1,61 @@
+/**
+ * Indexed read access to a token sequence, as used by the parsers.
+ *
+ * Indexes are absolute positions in the token stream. A source may hold only
+ * a window of the stream, in which case tokens become available as the parser
+ * asks for them and are dropped once they are released.
+ */
+public interface TokenSource {
+
+    /**
+     * Returns true if a token exists at index, loading it if necessary.
+     */
+    boolean has(int index);
+
+    Token.Type type(int index);
+
+    String value(int index);
+
+    boolean is(int index, String value);
+
+    void appendTo(int index, StringBuilder sb);
+
+    Token get(int index);
+
+    /**
+     * Signals that tokens before index will not be read again.
+     */
+    void release(int index);
+
+    /**
+     * Returns the storage the tokens are kept in, where a parser also puts
+     * the tree it builds from them.
+     */
+    default Storage storage() {
+        return Storage.HEAP;
+    }
+
+    /**
+     * Returns the index of the bracket that closes the "(", "[" or "{" at
+     * index, counting only brackets of the same kind. If it is never closed,
+     * returns the first index past the last token.
+     *
+     * This default scans forward; sources that hold all their tokens answer
+     * from a precomputed table instead.
+     */
+    default int closing(int index) {
+        String open = value(index);
+        String close = open.equals("(") ? ")" : open.equals("[") ? "]" : "}";
+        int depth = 0;
+        int i = index;
+        while (has(i)) {
+            if (is(i, open)) {
+                depth++;
+            } else if (is(i, close) && --depth == 0) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily lexes a {@link Reader} through a fixed-size character window.
+ *
+ * Each refill lexes every complete token in the window into a small batch.
+ * A token that runs into the end of the window is carried over and rescanned
+ * once more input has been read, so the window only grows when a single token
+ * is longer than the whole window. A comment produces no token, so one that
+ * fills the window is cut down to what decides where it ends and never makes
+ * it grow, even if it is never closed.
+ *
+ * The window grows up to a maximum, {@value #DEFAULT_MAX_WINDOW_SIZE}
+ * characters unless given. Past that, a token that has still not ended, such
+ * as a string that is never closed, makes {@link #hasNext} and {@link #next}
+ * throw an UncheckedIOException rather than read the rest of the input into
+ * memory. {@link Lexer#lex} has no such limit.
+ */
+public class TokenStream implements Iterator<Token> {
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Lexer lexer;
+    private final Reader reader;
+    private final int maxWindowSize;
+
+    private char[] window;
+    private CharBuffer view;
+    private TokenBuffer batch;
+    private int position;
+    private int limit;
+    private int next;
+    // Characters of the input before window[0], for the error on a token that outgrows the window
+    private long offset;
+    private boolean endOfInput;
+    // Whether window[0] starts a line of the input
+    private boolean lineStart = true;
+
+    public TokenStream(Lexer lexer, Reader reader) {
+        this(lexer, reader, DEFAULT_WINDOW_SIZE);
+    }
+
+    public TokenStream(Lexer lexer, Reader reader, int windowSize) {
+        this(lexer, reader, windowSize, Math.max(windowSize, DEFAULT_MAX_WINDOW_SIZE));
+    }
+
+    public TokenStream(Lexer lexer, Reader reader, int windowSize, int maxWindowSize) {
+        this.lexer = lexer;
+        this.reader = reader;
+        this.window = new char[Math.max(windowSize, 16)];
+        this.maxWindowSize = Math.max(maxWindowSize, window.length);
+        this.view = CharBuffer.wrap(window);
+        this.batch = new TokenBuffer(view, lexer.getTable(), window.length / 5);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next >= batch.size()) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(next++);
+    }
+
+    private boolean fill() {
+        if (endOfInput && position >= limit) {
+            return false;
+        }
+
+        if (position > 0) {
+            lineStart = Lexer.isLineStart(view, position, lineStart);
+            System.arraycopy(window, position, window, 0, limit - position);
+            limit -= position;
+            offset += position;
+            position = 0;
+        }
+        if (limit == window.length) {
+            cutComment();
+        }
+        if (limit == window.length) {
+            if (window.length >= maxWindowSize) {
+                throw new UncheckedIOException(new IOException("No token ends within " + window.length +
+                        " characters of character " + offset + " of the input"));
+            }
+            char[] grown = new char[(int) Math.min((long) window.length * 2, maxWindowSize)];
+            System.arraycopy(window, 0, grown, 0, limit);
+            window = grown;
+            view = CharBuffer.wrap(window);
+            batch = new TokenBuffer(view, lexer.getTable(), window.length / 5);
+        }
+
+        try {
+            int read = reader.read(window, limit, window.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        batch.clear();
+        next = 0;
+        position = lexer.lex(view, position, limit, endOfInput, lineStart, batch);
+        return true;
+    }
+
+    /**
+     * Cuts down a comment that starts at window[0] and fills the window. The
+     * lexer found nothing in it that ends it, unless a block comment ends
+     * right at the end of the window, which it also leaves for the next call.
+     * Otherwise all that can still matter is its opening and, for a block
+     * comment, its last character, which might be the "*" of the end.
+     */
+    private void cutComment() {
+        if (window[0] != '/') {
+            return;
+        }
+        if (window[1] == '*') {
+            if (window[limit - 2] == '*' && window[limit - 1] == '/') {
+                return;
+            }
+            window[2] = window[limit - 1];
+            offset += limit - 3;
+            limit = 3;
+        } else if (window[1] == '/') {
+            offset += limit - 2;
+            limit = 2;
+        }
+    }
+}
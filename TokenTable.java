@@ -0,0 +1,166 @@
+/**
+ * Canonical tokens of one language: keywords, operators and separators.
+ *
+ * Every fixed token exists exactly once as a flyweight {@link Token}, so a
+ * file with a million "for" or ";" tokens shares a single instance for each.
+ * Keywords are looked up through a perfect hash built when the table is
+ * created: the seed is chosen so that no two keywords share a slot, which
+ * makes a lookup one hash, one slot read and one region compare.
+ */
+public class TokenTable {
+
+    private static final int MAX_SEED_ATTEMPTS = 10_000;
+
+    private final Token[] keywordSlots;
+    private final int keywordSeed;
+    private final int keywordMask;
+    private final int maxKeywordLength;
+    private int maxSymbolLength;
+
+    // Operators followed by separators, grouped by their first character, in declaration order
+    private final Token[][] symbols = new Token[128][];
+
+    public TokenTable(String[] keywords, String[] operators, String[] separators) {
+        int maxLength = 0;
+        for (String keyword : keywords) {
+            maxLength = Math.max(maxLength, keyword.length());
+        }
+        this.maxKeywordLength = maxLength;
+
+        Token[] slots = null;
+        int seed = 0;
+        int size = Integer.highestOneBit(Math.max(1, keywords.length)) * 2;
+        while (slots == null) {
+            for (int candidate = 1; candidate <= MAX_SEED_ATTEMPTS && slots == null; candidate++) {
+                slots = tryPlace(keywords, candidate, size);
+                seed = candidate;
+            }
+            if (slots == null) {
+                size *= 2;
+            }
+        }
+        this.keywordSlots = slots;
+        this.keywordSeed = seed;
+        this.keywordMask = size - 1;
+
+        for (String operator : operators) {
+            addSymbol(new Token(Token.Type.OPERATOR, operator));
+        }
+        for (String separator : separators) {
+            addSymbol(new Token(Token.Type.SEPARATOR, separator));
+        }
+    }
+
+    private Token[] tryPlace(String[] keywords, int seed, int size) {
+        Token[] slots = new Token[size];
+        for (String keyword : keywords) {
+            int hash = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                hash = step(hash, keyword.charAt(i), seed);
+            }
+            int slot = spread(hash) & (size - 1);
+            if (slots[slot] != null) {
+                return null;
+            }
+            slots[slot] = new Token(Token.Type.KEYWORD, keyword);
+        }
+        return slots;
+    }
+
+    private void addSymbol(Token token) {
+        char first = token.getValue().charAt(0);
+        Token[] existing = symbols[first];
+        Token[] grown = new Token[existing == null ? 1 : existing.length + 1];
+        if (existing != null) {
+            System.arraycopy(existing, 0, grown, 0, existing.length);
+        }
+        grown[grown.length - 1] = token;
+        symbols[first] = grown;
+        maxSymbolLength = Math.max(maxSymbolLength, token.getValue().length());
+    }
+
+    private static int step(int hash, char c, int seed) {
+        return hash * seed + c;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the flyweight keyword token for code[start, end), or null if the
+     * range is not a keyword. Ranges longer than every keyword are rejected
+     * before anything is hashed.
+     */
+    public Token keyword(CharSequence code, int start, int end) {
+        if (end - start > maxKeywordLength) {
+            return null;
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = step(hash, code.charAt(i), keywordSeed);
+        }
+        Token candidate = keywordSlots[spread(hash) & keywordMask];
+        if (candidate == null) {
+            return null;
+        }
+        String value = candidate.getValue();
+        if (value.length() != end - start) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (code.charAt(start + i) != value.charAt(i)) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Returns the flyweight operator or separator starting at pos, using the
+     * first declared symbol that matches, or null if none does.
+     */
+    public Token symbol(CharSequence code, int pos, int length) {
+        char first = code.charAt(pos);
+        if (first >= 128 || symbols[first] == null) {
+            return null;
+        }
+        for (Token candidate : symbols[first]) {
+            String value = candidate.getValue();
+            if (pos + value.length() <= length && matchesTail(code, pos, value)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the flyweight for a fixed token occupying exactly code[start, end),
+     * or null for identifiers and literals.
+     */
+    public Token canonical(CharSequence code, int start, int end) {
+        char first = code.charAt(start);
+        if (startsSymbol(first)) {
+            Token symbol = symbol(code, start, end);
+            return symbol != null && symbol.getValue().length() == end - start ? symbol : null;
+        }
+        return keyword(code, start, end);
+    }
+
+    public int getMaxSymbolLength() {
+        return maxSymbolLength;
+    }
+
+    public boolean startsSymbol(char c) {
+        return c < 128 && symbols[c] != null;
+    }
+
+    private static boolean matchesTail(CharSequence code, int pos, String value) {
+        for (int i = 1; i < value.length(); i++) {
+            if (code.charAt(pos + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
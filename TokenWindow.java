@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A {@link TokenSource} over a lazily produced token stream. Tokens are pulled
+ * from the iterator as the parser reaches them and discarded once released,
+ * so only the part of the stream between the oldest unreleased token and the
+ * furthest lookahead is held in memory.
+ */
+public class TokenWindow implements TokenSource {
+
+    private final Iterator<Token> tokens;
+
+    private Token[] window = new Token[256];
+    private int head;   // array slot of the first held token
+    private int first;  // stream index of the first held token
+    private int count;
+
+    public TokenWindow(Iterator<Token> tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public boolean has(int index) {
+        while (index >= first + count && tokens.hasNext()) {
+            append(tokens.next());
+        }
+        return index >= first && index < first + count;
+    }
+
+    private void append(Token token) {
+        if (head + count == window.length) {
+            if (head > 0) {
+                System.arraycopy(window, head, window, 0, count);
+                Arrays.fill(window, count, head + count, null);
+                head = 0;
+            } else {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+        }
+        window[head + count] = token;
+        count++;
+    }
+
+    private Token at(int index) {
+        if (index < first) {
+            throw new IllegalStateException("Token " + index + " was already released");
+        }
+        if (!has(index)) {
+            throw new IndexOutOfBoundsException("No token at " + index);
+        }
+        return window[head + index - first];
+    }
+
+    @Override
+    public Token.Type type(int index) {
+        return at(index).getType();
+    }
+
+    @Override
+    public String value(int index) {
+        return at(index).getValue();
+    }
+
+    @Override
+    public boolean is(int index, String value) {
+        return at(index).getValue().equals(value);
+    }
+
+    @Override
+    public void appendTo(int index, StringBuilder sb) {
+        sb.append(at(index).getValue());
+    }
+
+    @Override
+    public Token get(int index) {
+        return at(index);
+    }
+
+    @Override
+    public void release(int index) {
+        int drop = Math.min(index - first, count);
+        if (drop <= 0) {
+            return;
+        }
+        Arrays.fill(window, head, head + drop, null);
+        head += drop;
+        first += drop;
+        count -= drop;
+    }
+}
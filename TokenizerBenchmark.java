@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Measures tokenizer throughput in MB/s on generated C and Java sources.
+ * Usage: java --add-modules jdk.incubator.vector TokenizerBenchmark [sizeInMB]
+ * (without the module, or if incubator/VectorByteScanner.java was not
+ * compiled, the vectorized byte scanner is not measured)
+ *
+ * With --pathological as the first argument it instead tokenizes and parses
+ * malformed and adversarial inputs, and fails if any of them falls below
+ * {@value #MIN_PATHOLOGICAL_MB_PER_SECOND} MB/s. Tokenizing and parsing are
+ * linear in the input, so a slow case means something went quadratic.
+ */
+public class TokenizerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final double MIN_PATHOLOGICAL_MB_PER_SECOND = 1.0;
+    private static final int NESTING_DEPTH = 100_000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--pathological")) {
+            runPathological(args.length > 1 ? Integer.parseInt(args[1]) : 4);
+            return;
+        }
+
+        int sizeInMB = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+
+        String cCode = generateC(sizeInMB * 1024 * 1024);
+        String javaCode = generateJava(sizeInMB * 1024 * 1024);
+
+        CTokenizer cTokenizer = new CTokenizer();
+        JavaTokenizer javaTokenizer = new JavaTokenizer();
+
+        report("CTokenizer", cCode, () -> cTokenizer.tokenize(cCode).size());
+        report("JavaTokenizer", javaCode, () -> javaTokenizer.tokenize(javaCode).size());
+        report("C buffer", cCode, () -> cTokenizer.tokenizeToBuffer(cCode).size());
+        report("Java buffer", javaCode, () -> javaTokenizer.tokenizeToBuffer(javaCode).size());
+        report("C parallel", cCode, () -> cTokenizer.tokenizeParallel(cCode).size());
+        report("Java parallel", javaCode, () -> javaTokenizer.tokenizeParallel(javaCode).size());
+        report("C stream", cCode, () -> count(cTokenizer.tokenize(new StringReader(cCode))));
+        report("Java stream", javaCode, () -> count(javaTokenizer.tokenize(new StringReader(javaCode))));
+
+        Path file = Files.createTempFile("benchmark", ".c");
+        try {
+            Files.write(file, cCode.getBytes(StandardCharsets.US_ASCII));
+            report("C read+String", cCode, () -> cTokenizer.tokenizeToBuffer(readWhole(file)).size());
+            report("C mapped", cCode, () -> cTokenizer.tokenizeToBuffer(readMapped(file)).size());
+
+        } finally {
+            Files.delete(file);
+        }
+
+        compareScanners("C", cCode, cTokenizer.getLexer());
+        compareScanners("Java", javaCode, javaTokenizer.getLexer());
+        // Long whitespace runs, where vector loads pay off
+        String indented = cCode.replace("\n", "\n" + " ".repeat(64));
+        compareScanners("C indented", indented, cTokenizer.getLexer());
+    }
+
+    /**
+     * Lexes the same mapped bytes with the scalar {@link ByteScanner} and with
+     * {@link ByteScanner#vectorized()}, which only differs from it when
+     * jdk.incubator.vector has been added to the module graph.
+     */
+    private static void compareScanners(String language, String code, Lexer lexer) throws IOException {
+        ByteScanner vectorized = ByteScanner.vectorized();
+        Lexer scalar = lexer.withByteScanner(new ByteScanner());
+        Lexer vector = lexer.withByteScanner(vectorized);
+
+        Path file = Files.createTempFile("benchmark", ".src");
+        try {
+            Files.write(file, code.getBytes(StandardCharsets.US_ASCII));
+            CharSequence mapped = readMapped(file);
+            report(language + " scalar", code, () -> scalar.lex(mapped).size());
+            report(language + " " + vectorized.getClass().getSimpleName(), code, () -> vector.lex(mapped).size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static CharSequence readWhole(Path file) {
+        try {
+            return new String(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CharSequence readMapped(Path file) {
+        try {
+            return SourceFile.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int count(Iterator<Token> tokens) {
+        int count = 0;
+        while (tokens.hasNext()) {
+            tokens.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static void report(String name, String code, Run run) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.tokenize();
+        }
+
+        long collections = gcCount();
+        long best = Long.MAX_VALUE;
+        int tokenCount = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            tokenCount = run.tokenize();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        collections = gcCount() - collections;
+
+        double megabytes = code.length() / (1024.0 * 1024.0);
+        double seconds = best / 1_000_000_000.0;
+        System.out.printf("%-24s %8.1f MB/s  (%d tokens, %.1f MB, %d GCs)%n", name, megabytes / seconds, tokenCount,
+                megabytes, collections);
+    }
+
+    private static void runPathological(int sizeInMB) {
+        int size = sizeInMB * 1024 * 1024;
+        String nestedBlocks = "int main() {\n" + "{".repeat(NESTING_DEPTH) + "}".repeat(NESTING_DEPTH) + "\n}\n";
+        String nestedParens = "int main() {\n    return " + "(".repeat(NESTING_DEPTH) + "1" + ")".repeat(NESTING_DEPTH)
+                + ";\n}\n";
+
+        checkC("C unterminated string", "\"" + repeat("\\\"", size));
+        checkC("C lone quotes", repeat("'\"\\", size));
+        checkC("C unclosed comment", "/*" + repeat("x = 1; ", size));
+        checkC("C continued directive", "#define X \\\n" + repeat("x = 1; \\\n", size));
+        checkC("C operator run", repeat("+=!&|<>", size));
+        checkC("C nested blocks", nestedBlocks);
+        checkC("C nested parentheses", nestedParens);
+        // Without its #include line, which would make the whole file one directive
+        checkC("C long line", generateC(size).substring("#include <stdio.h>\n".length()).replace('\n', ' '));
+        checkC("C bodiless declarations", repeat("int f() ", size));
+        checkC("C unclosed call", "int main() { f(" + repeat("g(", size));
+
+        checkJava("Java unterminated string", "\"" + repeat("\\\"", size));
+        checkJava("Java unclosed annotations", repeat("@a(", size));
+        checkJava("Java nested blocks", nestedBlocks.replace("int", "void"));
+        checkJava("Java long line", generateJava(size).replace('\n', ' '));
+        checkJava("Java bodiless declarations", repeat("void f() ", size));
+
+        CTokenizer cTokenizer = new CTokenizer();
+        String unterminated = "\"" + repeat("\\\"", size);
+        checkLinear("C stream unterminated", unterminated, () -> {
+            Iterator<Token> tokens = cTokenizer.tokenize(new StringReader(unterminated));
+            new CParser().parseFlat(tokens);
+            return 0;
+        });
+        String unclosedComment = "/*" + repeat("x = 1; ", size);
+        checkLinear("C stream unclosed comment", unclosedComment, () -> {
+            Iterator<Token> tokens = cTokenizer.tokenize(new StringReader(unclosedComment));
+            new CParser().parseFlat(tokens);
+            return 0;
+        });
+    }
+
+    private static void checkC(String name, String code) {
+        CTokenizer tokenizer = new CTokenizer();
+        checkLinear(name, code, () -> {
+            TokenBuffer tokens = tokenizer.tokenizeToBuffer(code);
+            new CParser().parseFlat(tokens);
+            return tokens.size();
+        });
+    }
+
+    private static void checkJava(String name, String code) {
+        JavaTokenizer tokenizer = new JavaTokenizer();
+        checkLinear(name, code, () -> {
+            TokenBuffer tokens = tokenizer.tokenizeToBuffer(code);
+            new JavaParser().parseFlat(tokens);
+            return tokens.size();
+        });
+    }
+
+    private static void checkLinear(String name, String code, Run run) {
+        run.tokenize();
+
+        // Best of a few rounds, each after a collection, so one GC pause is not mistaken for a slow path
+        long best = Long.MAX_VALUE;
+        int tokenCount = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            System.gc();
+            long start = System.nanoTime();
+            tokenCount = run.tokenize();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double seconds = best / 1_000_000_000.0;
+
+        double megabytes = code.length() / (1024.0 * 1024.0);
+        double throughput = megabytes / seconds;
+        System.out.printf("%-28s %8.1f MB/s  (%d tokens, %.1f MB)%n", name, throughput, tokenCount, megabytes);
+        if (throughput < MIN_PATHOLOGICAL_MB_PER_SECOND) {
+            throw new IllegalStateException(String.format("%s ran at %.2f MB/s, below the %.1f MB/s minimum", name,
+                    throughput, MIN_PATHOLOGICAL_MB_PER_SECOND));
+        }
+    }
+
+    private static String repeat(String unit, int size) {
+        return unit.repeat(Math.max(1, size / unit.length()));
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    static String generateC(int size) {
+        StringBuilder sb = new StringBuilder(size + 512);
+        sb.append("#include <stdio.h>\n");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("int function").append(i).append("(int arr[], int n) {\n")
+                    .append("    int total = 0;\n")
+                    .append("    for (int i = 0; i < n; i++) {\n")
+                    .append("        if (arr[i] != 0 && arr[i] > total) {\n")
+                    .append("            total += arr[i] * 2;\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    printf(\"%d\\n\", total);\n")
+                    .append("    return total;\n")
+                    .append("}\n");
+        }
+        return sb.toString();
+    }
+
+    static String generateJava(int size) {
+        StringBuilder sb = new StringBuilder(size + 512);
+        sb.append("import java.util.List;\npublic class Generated {\n");
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("    public int method").append(i).append("(int[] arr, int n) {\n")
+                    .append("        int total = 0;\n")
+                    .append("        for (int i = 0; i < n; i++) {\n")
+                    .append("            if (arr[i] != 0 && arr[i] > total) {\n")
+                    .append("                total += arr[i] * 2;\n")
+                    .append("            }\n")
+                    .append("        }\n")
+                    .append("        System.out.println(\"total: \" + total);\n")
+                    .append("        return total;\n")
+                    .append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private interface Run {
+        int tokenize();
+    }
+}
@@ -9,16 +9,19 @@ public class UserInterface {
     private static final String DESKTOP_DIRECTORY = "C:/Users/VICTUS/Desktop/";
     private static final String DOCUMENTS_DIRECTORY = "C:/Users/VICTUS/Documents/";
     private static Scanner scanner = new Scanner(System.in);
+    // Language implied by the extension of the last file read, null for pasted code
+    private static String fileLanguage;
 
-    public static String getInputCode() {
+    public static CharSequence getInputCode() {
         System.out.println("Please choose your input method:");
         System.out.println("1: Enter code via text");
         System.out.println("2: Provide a file name");
 
         int choice = scanner.nextInt();
         scanner.nextLine();
+        fileLanguage = null;
 
-        String code = "";
+        CharSequence code = "";
         if (choice == 1) {
             code = getTextInput(scanner);
         } else if (choice == 2) {
@@ -41,7 +44,7 @@ public class UserInterface {
         return codeBuilder.toString();
     }
 
-    private static String getFileInput(Scanner scanner) {
+    private static CharSequence getFileInput(Scanner scanner) {
         System.out.println("Enter the file name:");
         String fileName = scanner.nextLine();
 
@@ -59,11 +62,12 @@ public class UserInterface {
         }
 
         try {
-            String code = new String(Files.readAllBytes(filePath));
-            if (code.trim().isEmpty()) {
+            CharSequence code = SourceFile.read(filePath);
+            if (isBlank(code)) {
                 System.out.println("The file is empty.");
                 return "";
             }
+            fileLanguage = fileType;
             return code;
         } catch (IOException e) {
             System.out.println("Error reading the file.");
@@ -72,6 +76,27 @@ public class UserInterface {
         }
     }
 
+    private static boolean isBlank(CharSequence code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Echoes the code in slices, so a large mapped file is never copied into
+     * one String just to be printed.
+     */
+    public static void printCode(CharSequence code) {
+        int chunk = 8192;
+        for (int start = 0; start < code.length(); start += chunk) {
+            System.out.append(code, start, Math.min(code.length(), start + chunk));
+        }
+        System.out.println();
+    }
+
     private static Path locateFile(String fileName) {
         Path desktopPath = Paths.get(DESKTOP_DIRECTORY, fileName);
         Path documentsPath = Paths.get(DOCUMENTS_DIRECTORY, fileName);
@@ -86,22 +111,19 @@ public class UserInterface {
     }
 
     public static String detectFileType(String fileName) {
-        if (fileName.endsWith(".c")) {
-            return "C";
-        } else if (fileName.endsWith(".java")) {
-            return "Java";
-        } else {
-            return "Unknown";
-        }
+        String language = LanguageDetector.fromFileName(fileName);
+        return language != null ? language : "Unknown";
     }
 
-    public static String determineLanguage(String code) {
-        if (code.contains("import") || code.contains("public class")) {
-            return "Java";
-        } else if (code.contains("#include") || code.contains("int main")) {
-            return "C";
-        } else {
-            return "Unsupported";
+    /**
+     * Returns "Java", "C" or "Unsupported". Code read from a file takes the
+     * language of its extension; pasted code is judged by its prefix through
+     * {@link LanguageDetector}.
+     */
+    public static String determineLanguage(CharSequence code) {
+        if (fileLanguage != null) {
+            return fileLanguage;
         }
+        return LanguageDetector.detect(code);
     }
 }
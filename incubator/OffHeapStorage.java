@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * {@link Storage} in native memory, through the Foreign Memory API. Each
+ * column is a MemorySegment in a resource scope of its own, which is closed
+ * as soon as the column is resized into a new segment, and {@link #close}
+ * closes the scopes still open. The memory of a file is thereby given back
+ * when its analysis is done, rather than whenever the collector gets to it.
+ *
+ * The scopes are shared, so a column may be read from any thread, but not
+ * while the storage is being closed.
+ *
+ * Needs --add-modules jdk.incubator.foreign to compile and run, and is
+ * written against the API as JDK 17 has it, so it is kept out of the default
+ * sources and only built when asked for (see the README). Create it through
+ * {@link Storage#offHeap()}, which avoids loading this class when the module
+ * or the class is missing.
+ */
+public class OffHeapStorage extends Storage {
+
+    private static final long ALIGNMENT = 8;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    @Override
+    public boolean isOffHeap() {
+        return true;
+    }
+
+    @Override
+    public IntColumn ints(int capacity) {
+        return new Ints(new Segment(capacity, Integer.BYTES), capacity);
+    }
+
+    @Override
+    public ByteColumn bytes(int capacity) {
+        return new Bytes(new Segment(capacity, 1), capacity);
+    }
+
+    @Override
+    public StringColumn strings(int capacity) {
+        return new Strings(capacity);
+    }
+
+    @Override
+    public void close() {
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                segment.closeScope();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * A native segment of capacity elements of the given size in a scope of
+     * its own, registered with the storage so that closing it frees the
+     * segment.
+     */
+    private final class Segment {
+
+        private final int elementSize;
+        private ResourceScope scope;
+        private MemorySegment memory;
+
+        Segment(int capacity, int elementSize) {
+            this.elementSize = elementSize;
+            allocate(capacity);
+            synchronized (segments) {
+                segments.add(this);
+            }
+        }
+
+        private void allocate(int capacity) {
+            scope = ResourceScope.newSharedScope();
+            // A segment of no bytes is still allocated, so that resizing it works the same
+            memory = MemorySegment.allocateNative(Math.max(capacity, 1) * (long) elementSize, ALIGNMENT, scope);
+        }
+
+        // Moves the elements that fit into a new segment and frees the old one
+        void resize(int capacity) {
+            ResourceScope oldScope = scope;
+            MemorySegment old = memory;
+            allocate(capacity);
+            memory.copyFrom(old.asSlice(0, Math.min(old.byteSize(), memory.byteSize())));
+            oldScope.close();
+        }
+
+        void free() {
+            closeScope();
+            synchronized (segments) {
+                segments.remove(this);
+            }
+        }
+
+        void closeScope() {
+            if (scope.isAlive()) {
+                scope.close();
+            }
+        }
+    }
+
+    private static final class Ints extends IntColumn {
+
+        private final Segment segment;
+        private int capacity;
+
+        Ints(Segment segment, int capacity) {
+            this.segment = segment;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int get(int index) {
+            return MemoryAccess.getIntAtIndex(segment.memory, index);
+        }
+
+        @Override
+        public void set(int index, int value) {
+            MemoryAccess.setIntAtIndex(segment.memory, index, value);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void resize(int capacity) {
+            segment.resize(capacity);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void free() {
+            segment.free();
+        }
+    }
+
+    private static final class Bytes extends ByteColumn {
+
+        private final Segment segment;
+        private int capacity;
+
+        Bytes(Segment segment, int capacity) {
+            this.segment = segment;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public byte get(int index) {
+            return MemoryAccess.getByteAtOffset(segment.memory, index);
+        }
+
+        @Override
+        public void set(int index, byte value) {
+            MemoryAccess.setByteAtOffset(segment.memory, index, value);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void resize(int capacity) {
+            segment.resize(capacity);
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void free() {
+            segment.free();
+        }
+    }
+
+    /**
+     * The characters of every String set, appended to one segment, with the
+     * offset and length of each value in two int columns. A null value has
+     * length -1. Replacing a value appends its new characters and leaves the
+     * old ones unused.
+     */
+    private final class Strings extends StringColumn {
+
+        private final IntColumn offsets;
+        private final IntColumn lengths;
+        private final Segment chars;
+        private int charCapacity;
+        private int charCount;
+
+        Strings(int capacity) {
+            offsets = ints(capacity);
+            lengths = ints(capacity);
+            // Room for a short name per value to start with
+            charCapacity = Math.max(capacity * 8, 64);
+            chars = new Segment(charCapacity, Character.BYTES);
+        }
+
+        @Override
+        public String get(int index) {
+            int length = lengths.get(index);
+            if (length < 0) {
+                return null;
+            }
+            char[] value = new char[length];
+            MemorySegment.ofArray(value).copyFrom(chars.memory.asSlice(offsets.get(index) * (long) Character.BYTES,
+                    length * (long) Character.BYTES));
+            return new String(value);
+        }
+
+        @Override
+        public void set(int index, String value) {
+            if (value == null) {
+                lengths.set(index, -1);
+                return;
+            }
+            int length = value.length();
+            if (charCount + length > charCapacity) {
+                charCapacity = Math.max(charCount + length, charCapacity + (charCapacity >> 1));
+                chars.resize(charCapacity);
+            }
+            for (int i = 0; i < length; i++) {
+                MemoryAccess.setCharAtIndex(chars.memory, charCount + i, value.charAt(i));
+            }
+            offsets.set(index, charCount);
+            lengths.set(index, length);
+            charCount += length;
+        }
+
+        @Override
+        public int capacity() {
+            return offsets.capacity();
+        }
+
+        @Override
+        public void resize(int capacity) {
+            offsets.resize(capacity);
+            lengths.resize(capacity);
+        }
+
+        @Override
+        public void free() {
+            offsets.free();
+            lengths.free();
+            chars.free();
+        }
+    }
+}
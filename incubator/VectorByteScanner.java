@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ByteScanner} that classifies 16 or 32 bytes per step with the
+ * Vector API. Each step loads one vector, builds a lane mask of the bytes
+ * that still belong to the run and stops at the first lane outside it. The
+ * first few bytes of a run and the tail shorter than a vector are left to
+ * the scalar scanner, so short tokens never pay for a vector load.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and run, so it is kept
+ * out of the default sources and only built when asked for (see the README).
+ * Create it through {@link ByteScanner#vectorized()}, which avoids loading
+ * this class when the module or the class is missing.
+ */
+public class VectorByteScanner extends ByteScanner {
+
+    // Wider vectors only cost more on the short runs source code is made of
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.vectorByteSize() > 32
+            ? ByteVector.SPECIES_256
+            : ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    // Most identifiers and numbers are shorter than this, and a vector load does not pay off for them
+    private static final int SCALAR_PREFIX = 16;
+
+    @Override
+    public int skipWhitespace(AsciiText text, int pos, int end) {
+        int prefixEnd = Math.min(end, pos + SCALAR_PREFIX);
+        pos = super.skipWhitespace(text, pos, prefixEnd);
+        if (pos < prefixEnd) {
+            return pos;
+        }
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        for (; pos + LANES <= end; pos += LANES) {
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, bytes, offset + pos, ByteOrder.nativeOrder());
+            VectorMask<Byte> whitespace = v.eq((byte) ' ')
+                    .or(v.eq((byte) '\n'))
+                    .or(v.eq((byte) '\t'))
+                    .or(v.eq((byte) '\r'))
+                    .or(v.eq((byte) '\f'));
+            if (!whitespace.allTrue()) {
+                return pos + whitespace.not().firstTrue();
+            }
+        }
+        return super.skipWhitespace(text, pos, end);
+    }
+
+    @Override
+    public int skipIdentifier(AsciiText text, int pos, int end) {
+        int prefixEnd = Math.min(end, pos + SCALAR_PREFIX);
+        pos = super.skipIdentifier(text, pos, prefixEnd);
+        if (pos < prefixEnd) {
+            return pos;
+        }
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        for (; pos + LANES <= end; pos += LANES) {
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, bytes, offset + pos, ByteOrder.nativeOrder());
+            // Setting bit 5 folds upper case onto lower case and no other byte onto a letter
+            ByteVector lower = v.or((byte) 0x20);
+            VectorMask<Byte> identifier = inRange(lower, 'a', 'z')
+                    .or(inRange(v, '0', '9'))
+                    .or(v.eq((byte) '_'));
+            if (!identifier.allTrue()) {
+                return pos + identifier.not().firstTrue();
+            }
+        }
+        return super.skipIdentifier(text, pos, end);
+    }
+
+    @Override
+    public int skipDigits(AsciiText text, int pos, int end) {
+        int prefixEnd = Math.min(end, pos + SCALAR_PREFIX);
+        pos = super.skipDigits(text, pos, prefixEnd);
+        if (pos < prefixEnd) {
+            return pos;
+        }
+        ByteBuffer bytes = text.getBytes();
+        int offset = text.getOffset();
+        for (; pos + LANES <= end; pos += LANES) {
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, bytes, offset + pos, ByteOrder.nativeOrder());
+            VectorMask<Byte> digit = inRange(v, '0', '9');
+            if (!digit.allTrue()) {
+                return pos + digit.not().firstTrue();
+            }
+        }
+        return super.skipDigits(text, pos, end);
+    }
+
+    private static VectorMask<Byte> inRange(ByteVector v, char low, char high) {
+        return v.compare(VectorOperators.GE, (byte) low).and(v.compare(VectorOperators.LE, (byte) high));
+    }
+}
@@ -0,0 +1,8 @@
+public class Fib {
+    /* tree recursion */
+    static int fib(int n) {
+        if (n <= 1) return n;
+        return fib(n - 1) + fib(n - 2);
+    }
+    public static void main(String[] args) { System.out.println(fib(10)); }
+}
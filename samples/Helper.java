@@ -0,0 +1,12 @@
+public class Helper {
+    int linear(int n) {
+        int s = 0;
+        for (int i = 0; i < n; i++) { s += i; }
+        return s;
+    }
+    int outer(int n) {
+        int t = 0;
+        for (int k = 0; k < n; k++) { t += linear(n); }
+        return t;
+    }
+}
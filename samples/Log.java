@@ -0,0 +1,10 @@
+public class Log {
+    int count(int n) {
+        int c = 0;
+        while (n > 1) {
+            n = n / 2;
+            c++;
+        }
+        return c;
+    }
+}
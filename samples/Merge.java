@@ -0,0 +1,14 @@
+public class Merge {
+    void mergeSort(int[] a, int l, int r) {
+        if (l < r) {
+            int m = (l + r) / 2;
+            mergeSort(a, l, m);
+            mergeSort(a, m + 1, r);
+            merge(a, l, m, r);
+        }
+    }
+    void merge(int[] a, int l, int m, int r) {
+        int[] tmp = new int[r - l + 1];
+        for (int i = l; i <= r; i++) { tmp[i - l] = a[i]; }
+    }
+}
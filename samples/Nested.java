@@ -0,0 +1,12 @@
+import java.util.List;
+public class Nested {
+    public static void main(String[] args) {
+        int n = 10;
+        int[] arr = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                arr[i] += j;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+import java.util.Arrays;
+public class Sorts {
+    void sortIt(int[] a) {
+        Arrays.sort(a);
+    }
+    int sum(int[] a) {
+        int s = 0;
+        for (int i = 0; i < a.length; i++) { s += a[i]; }
+        return s;
+    }
+    int getX() { return x; }
+    void setX(int v) { this.x = v; }
+}
@@ -0,0 +1,11 @@
+#include <stdio.h>
+int main() {
+    int n = 10, j = 0, c = 0;
+    for (int i = 0; i < n; i++) {
+        while (j < n) {
+            j++;
+            c++;
+        }
+    }
+    return c;
+}
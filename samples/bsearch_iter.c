@@ -0,0 +1,12 @@
+#include <stdio.h>
+int binarySearch(int arr[], int n, int x) {
+    int low = 0, high = n - 1;
+    while (low <= high) {
+        int mid = (low + high) / 2;
+        if (arr[mid] == x) return mid;
+        if (arr[mid] < x) low = mid + 1;
+        else high = mid - 1;
+    }
+    return -1;
+}
+int main() { int a[10]; return binarySearch(a, 10, 3); }
@@ -0,0 +1,12 @@
+#include <stdio.h>
+/* recursive binary search */
+int bs(int arr[], int l, int r, int x) {
+    if (r >= l) {
+        int mid = l + (r - l) / 2;
+        if (arr[mid] == x) return mid;
+        if (arr[mid] > x) return bs(arr, l, mid - 1, x);
+        return bs(arr, mid + 1, r, x);
+    }
+    return -1;
+}
+int main() { return 0; }
@@ -0,0 +1,10 @@
+#include <stdio.h>
+#define MAX 10
+int main() {
+    int c = 0;
+    for (int i = 0; i < 10; i++) {
+        c++;
+    }
+    for (int j = 0; j < MAX_SIZE; j++) { c--; }
+    return c;
+}
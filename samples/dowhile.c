@@ -0,0 +1,8 @@
+#include <stdio.h>
+int main() {
+    int n = 10, i = 0;
+    do {
+        i++;
+    } while (i < n);
+    return i;
+}
@@ -0,0 +1,7 @@
+#include <stdio.h>
+// factorial
+int fact(int n) {
+    if (n == 0) return 1;
+    return n * fact(n - 1);
+}
+int main() { return fact(5); }
@@ -0,0 +1,11 @@
+#include <stdio.h>
+int linear(int n) {
+    int s = 0;
+    for (int i = 0; i < n; i++) { s += i; }
+    return s;
+}
+int main() {
+    int n = 100, t = 0;
+    for (int k = 0; k < n; k++) { t += linear(n); }
+    return t;
+}
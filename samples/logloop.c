@@ -0,0 +1,8 @@
+#include <stdio.h>
+int main() {
+    int n = 1000, c = 0;
+    for (int i = 1; i < n; i *= 2) {
+        c++;
+    }
+    return c;
+}
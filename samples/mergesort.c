@@ -0,0 +1,16 @@
+#include <stdio.h>
+void merge(int arr[], int l, int m, int r) {
+    int i, j, k;
+    for (i = l; i <= r; i++) {
+        arr[i] = arr[i];
+    }
+}
+void mergeSort(int arr[], int l, int r) {
+    if (l < r) {
+        int m = l + (r - l) / 2;
+        mergeSort(arr, l, m);
+        mergeSort(arr, m + 1, r);
+        merge(arr, l, m, r);
+    }
+}
+int main() { int a[5]; mergeSort(a, 0, 4); return 0; }
@@ -0,0 +1,11 @@
+#include <stdio.h>
+int main() {
+    int n = 100;
+    int s = 0;
+    for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+            s += i * j;
+        }
+    }
+    return s;
+}
@@ -0,0 +1,10 @@
+#include <stdio.h>
+int main() {
+    int n = 1000, c = 0;
+    for (int i = 0; i < n; i++) {
+        for (int j = 1; j < n; j = j * 2) {
+            c++;
+        }
+    }
+    return c;
+}
@@ -0,0 +1,10 @@
+#include <stdio.h>
+int main() {
+    int n = 10, s = 0;
+    for (int i = 0; i < n; i++)
+        s += i;
+    for (int j = 0; j < n; j++) {
+        s -= j;
+    }
+    return s;
+}
@@ -0,0 +1,8 @@
+#include <stdio.h>
+int main() {
+    char *s = "hello // not a comment /* nope */";
+    char c = 'x';
+    int n = 5;
+    for (int i = 0; i < n; i++) { printf("%s \"q\" %c\n", s, c); }
+    return 0;
+}
@@ -0,0 +1,12 @@
+#include <stdio.h>
+int main() {
+    int n = 10, s = 0;
+    for (int i = 0; i < n; i++) {
+        for (int j = 0; j < n; j++) {
+            for (int k = 0; k < n; k++) {
+                s++;
+            }
+        }
+    }
+    return s;
+}